@@ -6,25 +6,39 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.handycraft.services.ProductService;
 import com.handycraft.services.UserService;
+import com.handycraft.utils.Bulkhead;
+import com.handycraft.utils.QueryUtil;
+import com.handycraft.utils.RateLimitFilter;
+import com.handycraft.utils.RequestExecutor;
 import com.handycraft.utils.ResponseUtil;
 import com.handycraft.models.Product;
 import com.handycraft.models.User;
 import com.handycraft.models.Order;
 import com.handycraft.services.ActivityLogService;
+import com.handycraft.services.OrderAnalyticsStore;
 import com.handycraft.services.OrderService;
+import com.handycraft.services.SalesRollupService;
+import com.handycraft.services.StatsRegistry;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 
 public class AdminHandler implements HttpHandler {
 
     private final UserService userService = UserService.getInstance();
     private final ProductService productService = ProductService.getInstance();
-    private final ActivityLogService activityLogService = new ActivityLogService();
-    private final FeedbackService feedbackService = new FeedbackService();
+    private final ActivityLogService activityLogService = ActivityLogService.getInstance();
+    private final FeedbackService feedbackService = FeedbackService.getInstance();
+    private final SalesRollupService salesRollupService = SalesRollupService.getInstance();
+    private final OrderAnalyticsStore orderAnalyticsStore = OrderAnalyticsStore.getInstance();
     private final Gson gson = new Gson();
 
     private boolean checkAdminAccess(HttpExchange exchange) {
@@ -67,7 +81,8 @@ public class AdminHandler implements HttpHandler {
 
 
         try {
-            if (method.equalsIgnoreCase("GET") && path.equals(ADMIN_BASE + "/stats")) {
+            if (method.equalsIgnoreCase("GET")
+                    && (path.equals(ADMIN_BASE + "/dashboard") || path.equals(ADMIN_BASE + "/stats"))) {
                 handleGetStats(exchange);
             }
             else if (method.equalsIgnoreCase("GET") && path.equals(ADMIN_BASE + "/products")) {
@@ -83,6 +98,12 @@ public class AdminHandler implements HttpHandler {
                 String feedbackId = path.substring((ADMIN_BASE + "/feedback/").length());
                 handleDeleteFeedback(exchange, feedbackId);
             }
+            else if (method.equalsIgnoreCase("GET") && path.equals(ADMIN_BASE + "/sales")) {
+                handleGetSales(exchange);
+            }
+            else if (method.equalsIgnoreCase("GET") && path.equals(ADMIN_BASE + "/analytics")) {
+                handleGetAnalytics(exchange);
+            }
             else if (method.equalsIgnoreCase("GET") && path.equals(ADMIN_BASE + "/orders")) {
                 handleGetOrders(exchange);
             }
@@ -92,6 +113,15 @@ public class AdminHandler implements HttpHandler {
             else if (method.equalsIgnoreCase("GET") && path.equals(ADMIN_BASE + "/logs")) {
                 handleGetLogs(exchange);
             }
+            else if (method.equalsIgnoreCase("GET") && path.equals(ADMIN_BASE + "/executor/metrics")) {
+                Map<String, Object> metrics = new LinkedHashMap<>(RequestExecutor.getInstance().getMetrics());
+                metrics.put("bulkheads", Bulkhead.getAllMetrics());
+                metrics.put("rateLimits", RateLimitFilter.getAllMetrics());
+                ResponseUtil.sendResponse(exchange, 200, gson.toJson(metrics), "application/json");
+            }
+            else if (method.equalsIgnoreCase("GET") && path.equals(ADMIN_BASE + "/logs/metrics")) {
+                ResponseUtil.sendResponse(exchange, 200, gson.toJson(activityLogService.getMetrics()), "application/json");
+            }
             else if (method.equalsIgnoreCase("POST") && path.equals(ADMIN_BASE + "/products")) {
                 handleSaveProduct(exchange, null);
             }
@@ -154,6 +184,10 @@ public class AdminHandler implements HttpHandler {
             boolean success = (productId == null)
                     ? productService.addProduct(product) != null
                     : productService.updateProduct(product);
+            if (success) {
+                // Admin edits are acknowledged only once they are on disk
+                productService.awaitFlush();
+            }
 
             ResponseUtil.sendResponse(exchange, success ? 200 : 400,
                     "{\"message\": \"" + (success ? "Success" : "Failed to save") + "\"}", "application/json");
@@ -180,7 +214,11 @@ public class AdminHandler implements HttpHandler {
             log.setDetails(data.get("details"));
             log.setTimestamp(data.get("timestamp"));
 
-            activityLogService.addLog(log);
+            // Only queued here; the log writer thread persists it
+            if (!activityLogService.addLog(log)) {
+                ResponseUtil.sendResponse(exchange, 503, "{\"message\": \"Log buffer full\"}", "application/json");
+                return;
+            }
             ResponseUtil.sendResponse(exchange, 200, "{\"message\": \"Log saved\"}", "application/json");
         } catch (Exception e) {
             System.err.println("Error saving log: " + e.getMessage());
@@ -188,9 +226,29 @@ public class AdminHandler implements HttpHandler {
         }
     }
 
+    // Without parameters returns the full history (used by CSV export); otherwise one page plus summary counts
     private void handleGetLogs(HttpExchange exchange) throws IOException {
-        List<com.handycraft.models.ActivityLog> logs = activityLogService.getAllLogs();
-        ResponseUtil.sendResponse(exchange, 200, gson.toJson(logs), "application/json");
+        Map<String, String> params = QueryUtil.parse(exchange.getRequestURI().getRawQuery());
+        if (params.isEmpty()) {
+            List<com.handycraft.models.ActivityLog> logs = activityLogService.getAllLogs();
+            ResponseUtil.sendResponse(exchange, 200, gson.toJson(logs), "application/json");
+            return;
+        }
+
+        ActivityLogService.LogPage page = activityLogService.queryLogs(
+                params.get("from"),
+                params.get("to"),
+                params.get("username"),
+                params.get("action"),
+                QueryUtil.getInt(params, "limit", 100, 1, 1000),
+                params.get("cursor"));
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("items", page.getItems());
+        response.put("nextCursor", page.getNextCursor());
+        response.put("summary", activityLogService.getSummary(
+                params.getOrDefault("today", java.time.LocalDate.now().toString())));
+        ResponseUtil.sendResponse(exchange, 200, gson.toJson(response), "application/json");
     }
     private void handleUpdateOrderStatus(HttpExchange exchange) throws IOException {
         try (InputStreamReader isr = new InputStreamReader(exchange.getRequestBody())) {
@@ -205,41 +263,59 @@ public class AdminHandler implements HttpHandler {
         }
     }
 
-    private void handleGetStats(HttpExchange exchange) throws IOException {
-        Map<String, Integer> stats = new HashMap<>();
-
-        List<Order> allOrders = orderService.getAllOrders();
-        List<User> allUsers = userService.getAllUsers();
-        int totalProducts = productService.loadAllProducts().size();
-
-        // Calculate counts for every possible status
-        int pending = 0;
-        int processing = 0;
-        int shipped = 0;
-        int completed = 0;
-
-        for (Order order : allOrders) {
-            String status = order.getStatus();
-            if ("Pending".equalsIgnoreCase(status)) pending++;
-            else if ("Processing".equalsIgnoreCase(status)) processing++;
-            else if ("Shipped".equalsIgnoreCase(status)) shipped++;
-            else if ("Completed".equalsIgnoreCase(status)) completed++;
+    // GET /api/admin/sales?granularity=day|week|month&from=yyyy-MM-dd&to=yyyy-MM-dd, all optional
+    private void handleGetSales(HttpExchange exchange) throws IOException {
+        Map<String, String> params = QueryUtil.parse(exchange.getRequestURI().getRawQuery());
+        SalesRollupService.Granularity granularity;
+        LocalDate from;
+        LocalDate to;
+        try {
+            granularity = SalesRollupService.Granularity.parse(params.getOrDefault("granularity", "day"));
+            from = parseDate(params.get("from"));
+            to = parseDate(params.get("to"));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            ResponseUtil.sendResponse(exchange, 400,
+                    "{\"message\": \"granularity must be day, week or month and dates yyyy-MM-dd\"}", "application/json");
+            return;
+        }
+        ResponseUtil.sendResponse(exchange, 200,
+                gson.toJson(salesRollupService.getSales(granularity, from, to)), "application/json");
+    }
+
+    // GET /api/admin/analytics?groupBy=product|status|day|week|month&from=&to=&status=Shipped,Completed
+    private void handleGetAnalytics(HttpExchange exchange) throws IOException {
+        Map<String, String> params = QueryUtil.parse(exchange.getRequestURI().getRawQuery());
+        OrderAnalyticsStore.GroupBy groupBy;
+        LocalDate from;
+        LocalDate to;
+        try {
+            groupBy = OrderAnalyticsStore.GroupBy.valueOf(params.getOrDefault("groupBy", "product").trim().toUpperCase(Locale.ROOT));
+            from = parseDate(params.get("from"));
+            to = parseDate(params.get("to"));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            ResponseUtil.sendResponse(exchange, 400,
+                    "{\"message\": \"groupBy must be product, status, day, week or month and dates yyyy-MM-dd\"}", "application/json");
+            return;
+        }
+        List<String> statuses = new ArrayList<>();
+        for (String status : params.getOrDefault("status", "").split(",")) {
+            if (!status.isBlank()) statuses.add(status.trim());
         }
+        ResponseUtil.sendResponse(exchange, 200,
+                gson.toJson(orderAnalyticsStore.aggregate(groupBy, from, to, statuses)), "application/json");
+    }
 
-        // Populate the response map
-        stats.put("totalProducts", totalProducts);
-        stats.put("registeredUsers", allUsers.size());
-        stats.put("totalOrders", allOrders.size());
-        stats.put("pendingOrders", pending);
-        stats.put("processingOrders", processing);
-        stats.put("shippedOrders", shipped);
-        stats.put("completedOrders", completed);
+    private static LocalDate parseDate(String value) {
+        return value == null || value.isBlank() ? null : LocalDate.parse(value.trim());
+    }
 
-        ResponseUtil.sendResponse(exchange, 200, gson.toJson(stats), "application/json");
+    // Counters are maintained by the services, so this is O(1) however many orders there are
+    private void handleGetStats(HttpExchange exchange) throws IOException {
+        ResponseUtil.sendResponse(exchange, 200, gson.toJson(StatsRegistry.getInstance().getSnapshot()), "application/json");
     }
 
     private void handleGetProducts(HttpExchange exchange) throws IOException {
-        ResponseUtil.sendResponse(exchange, 200, gson.toJson(productService.loadAllProducts()), "application/json");
+        ResponseUtil.sendCached(exchange, productService.getCatalogResponse());
     }
 
     private void handleGetUsers(HttpExchange exchange) throws IOException {
@@ -247,11 +323,14 @@ public class AdminHandler implements HttpHandler {
     }
 
     private void handleGetAllFeedback(HttpExchange exchange) throws IOException {
-        ResponseUtil.sendResponse(exchange, 200, gson.toJson(new FeedbackService().getAllFeedback()), "application/json");
+        ResponseUtil.sendResponse(exchange, 200, gson.toJson(feedbackService.getAllFeedback()), "application/json");
     }
 
     private void handleDeleteProduct(HttpExchange exchange, String productId) throws IOException {
         boolean success = productService.deleteProduct(productId);
+        if (success) {
+            productService.awaitFlush();
+        }
         ResponseUtil.sendResponse(exchange, success ? 204 : 404, "", "application/json");
     }
     private void handleClearLogs(HttpExchange exchange) throws IOException {
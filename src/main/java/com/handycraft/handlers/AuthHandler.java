@@ -103,7 +103,7 @@ public class AuthHandler implements HttpHandler {
         }
 
         // === CHECK IF EMAIL EXISTS ===
-        if (userService.findUserByEmail(email) != null) {
+        if (userService.emailExists(email)) {
             ResponseUtil.sendResponse(exchange, 409,
                     "{\"message\": \"Email already registered.\"}", "application/json");
             return;
@@ -3,7 +3,6 @@ package com.handycraft.handlers;
 import com.google.gson.Gson;
 import com.sun.net.httpserver.*;
 import com.handycraft.models.Feedback;
-import com.handycraft.models.Order;
 import com.handycraft.services.FeedbackService;
 import com.handycraft.services.OrderService;
 import com.handycraft.utils.ResponseUtil;
@@ -14,7 +13,7 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class FeedbackHandler implements HttpHandler {
-    private final FeedbackService service = new FeedbackService();
+    private final FeedbackService service = FeedbackService.getInstance();
     private final OrderService orderService = OrderService.getInstance();
     private final Gson gson = new Gson();
 
@@ -59,12 +58,8 @@ public class FeedbackHandler implements HttpHandler {
                 return;
             }
 
-            //verify against orders.json using the hidden email field
-            List<Order> userOrders = orderService.getOrdersByUserId(fb.getUserEmail());
-
-            boolean hasPurchased = userOrders.stream()
-                    .filter(o -> "Completed".equalsIgnoreCase(o.getStatus()))
-                    .anyMatch(o -> o.getPurchaseProductIds().contains(fb.getProductId()));
+            //verify against completed orders using the hidden email field
+            boolean hasPurchased = orderService.hasCompletedPurchase(fb.getUserEmail(), fb.getProductId());
 
             if (hasPurchased) {
                 if (fb.getId() == null) fb.setId(UUID.randomUUID().toString());
@@ -3,17 +3,43 @@ package com.handycraft.handlers;
 import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import com.handycraft.services.BestsellerService;
 import com.handycraft.services.ProductService;
-//import com.handycraft.services.FeedbackService;
+import com.handycraft.services.FeedbackService;
+import com.handycraft.services.RelatedProductsService;
+import com.handycraft.utils.QueryUtil;
 import com.handycraft.utils.ResponseUtil;
 import com.handycraft.models.Product;
+import com.handycraft.models.RatingSummary;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ProductHandler implements HttpHandler {
     private final ProductService productService = ProductService.getInstance();
+    private final FeedbackService feedbackService = FeedbackService.getInstance();
+    private final BestsellerService bestsellerService = BestsellerService.getInstance();
+    private final RelatedProductsService relatedProductsService = RelatedProductsService.getInstance();
     private final Gson gson = new Gson();
 
+    // Serialized product detail responses, reused until the product or its ratings change
+    private final Map<String, CachedDetail> detailCache = new ConcurrentHashMap<>();
+
+    private static class CachedDetail {
+        final long revision;
+        final RatingSummary rating; // summaries are immutable, so identity tells us if it changed
+        final byte[] body;
+
+        CachedDetail(long revision, RatingSummary rating, byte[] body) {
+            this.revision = revision;
+            this.rating = rating;
+            this.body = body;
+        }
+    }
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         String method = exchange.getRequestMethod();
@@ -35,11 +61,12 @@ public class ProductHandler implements HttpHandler {
         if (method.equalsIgnoreCase("GET") && path.equals("/api/products")) {
 
             try {
-                List<Product> products = productService.loadAllProducts();
-
-                String jsonResponse = gson.toJson(products);
-
-                ResponseUtil.sendResponse(exchange, 200, jsonResponse, "application/json");
+                String rawQuery = exchange.getRequestURI().getRawQuery();
+                if (rawQuery != null && !rawQuery.isEmpty()) {
+                    handleQueryProducts(exchange, QueryUtil.parse(rawQuery));
+                    return;
+                }
+                ResponseUtil.sendCached(exchange, productService.getCatalogResponse());
 
             } catch (Exception e) {
                 System.err.println("Error saving file after delete: " + e.getMessage());
@@ -48,9 +75,133 @@ public class ProductHandler implements HttpHandler {
                         "application/json");
             }
 
+        } else if (method.equalsIgnoreCase("GET") && path.equals("/api/products/top")) {
+            // Bestsellers for the last 24h, 7d and 30d; matched before /{id} like search
+            ResponseUtil.sendCached(exchange, bestsellerService.getTopResponse());
+
+        } else if (method.equalsIgnoreCase("GET") && path.equals("/api/products/search")) {
+            // Matched before /{id} so "search" is never taken for a product id
+            Map<String, String> params = QueryUtil.parse(exchange.getRequestURI().getRawQuery());
+            String query = params.getOrDefault("q", "");
+            ProductService.SearchPage page = productService.searchProducts(query,
+                    QueryUtil.getInt(params, "limit", 20, 1, 100));
+            ResponseUtil.sendResponse(exchange, 200, gson.toJson(page), "application/json");
+
+        } else if (method.equalsIgnoreCase("GET") && path.startsWith("/api/products/")) {
+            // Handle GET /api/products/{id}
+            String productId = path.substring("/api/products/".length());
+            if (productId.endsWith("/related")) {
+                // Handle GET /api/products/{id}/related
+                productId = productId.substring(0, productId.length() - "/related".length());
+                if (!productId.isEmpty() && !productId.contains("/")) {
+                    handleGetRelated(exchange, productId);
+                    return;
+                }
+            }
+            if (productId.isEmpty() || productId.contains("/")) {
+                ResponseUtil.sendResponse(exchange, 404, "{\"message\": \"Endpoint Not Found\"}", "application/json");
+                return;
+            }
+            handleGetProduct(exchange, productId);
+
         } else {
             // Handle requests for specific IDs or wrong methods
             ResponseUtil.sendResponse(exchange, 404, "{\"message\": \"Endpoint Not Found\"}", "application/json");
         }
     }
-}
\ No newline at end of file
+
+    // GET /api/products?category=&minPrice=&maxPrice=&inStock=&sort=&limit=&cursor=
+    private void handleQueryProducts(HttpExchange exchange, Map<String, String> params) throws IOException {
+        Double minPrice;
+        Double maxPrice;
+        try {
+            minPrice = parsePrice(params.get("minPrice"));
+            maxPrice = parsePrice(params.get("maxPrice"));
+        } catch (NumberFormatException e) {
+            ResponseUtil.sendResponse(exchange, 400, "{\"message\": \"Invalid price range.\"}", "application/json");
+            return;
+        }
+        String inStock = params.get("inStock");
+        boolean inStockOnly = "true".equalsIgnoreCase(inStock) || "1".equals(inStock);
+
+        ProductService.ProductPage page = productService.queryProducts(
+                params.get("category"),
+                minPrice,
+                maxPrice,
+                inStockOnly,
+                params.get("sort"),
+                QueryUtil.getInt(params, "limit", 24, 1, 100),
+                params.get("cursor"));
+
+        ResponseUtil.sendResponse(exchange, 200, gson.toJson(page), "application/json");
+    }
+
+    private static Double parsePrice(String value) {
+        if (value == null || value.isBlank()) return null;
+        return Double.parseDouble(value.trim());
+    }
+
+    private void handleGetProduct(HttpExchange exchange, String productId) throws IOException {
+        try {
+            // Read the revision before the product so a concurrent change can only make the entry look stale
+            long revision = productService.getProductRevision(productId);
+            RatingSummary rating = feedbackService.getRatingSummary(productId);
+
+            CachedDetail cached = detailCache.get(productId);
+            if (cached == null || cached.revision != revision || cached.rating != rating) {
+                Product product = productService.getProductById(productId);
+                if (product == null) {
+                    detailCache.remove(productId);
+                    ResponseUtil.sendResponse(exchange, 404, "{\"message\": \"Product not found.\"}", "application/json");
+                    return;
+                }
+                cached = new CachedDetail(revision, rating, buildDetail(product, rating));
+                detailCache.put(productId, cached);
+            }
+
+            ResponseUtil.sendResponse(exchange, 200, cached.body, "application/json");
+
+        } catch (Exception e) {
+            System.err.println("Error loading product " + productId + ": " + e.getMessage());
+            ResponseUtil.sendResponse(exchange, 500,
+                    "{\"message\": \"Internal Server Error: Could not load product.\"}",
+                    "application/json");
+        }
+    }
+
+    // Products most often bought in the same completed order: {"productId": ..., "items": [{"product", "orders"}]}
+    private void handleGetRelated(HttpExchange exchange, String productId) throws IOException {
+        if (productService.getProductById(productId) == null) {
+            ResponseUtil.sendResponse(exchange, 404, "{\"message\": \"Product not found.\"}", "application/json");
+            return;
+        }
+        Map<String, String> params = QueryUtil.parse(exchange.getRequestURI().getRawQuery());
+        List<RelatedProductsService.RelatedItem> items = relatedProductsService.getRelated(productId,
+                QueryUtil.getInt(params, "limit", 8, 1, 50));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("productId", productId);
+        result.put("items", items);
+        ResponseUtil.sendResponse(exchange, 200, gson.toJson(result), "application/json");
+    }
+
+    // Product, per-variant stock and rating summary in one payload
+    private byte[] buildDetail(Product product, RatingSummary rating) {
+        Map<String, Integer> stock = new LinkedHashMap<>();
+        int totalStock = 0;
+        if (product.getInventory() != null) {
+            for (Map.Entry<String, Integer> entry : product.getInventory().entrySet()) {
+                int quantity = entry.getValue() == null ? 0 : entry.getValue();
+                stock.put(entry.getKey(), quantity);
+                totalStock += quantity;
+            }
+        }
+
+        Map<String, Object> detail = new LinkedHashMap<>();
+        detail.put("product", product);
+        detail.put("stock", stock);
+        detail.put("totalStock", totalStock);
+        detail.put("rating", rating);
+        return gson.toJson(detail).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,257 @@
+package com.handycraft.handlers;
+
+import com.handycraft.utils.CachedResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Static files held in memory, keyed by their resolved path. Each entry keeps the bytes,
+ * the MIME type, a strong ETag, Last-Modified and (for text) a gzip copy, so a cache hit
+ * needs no filesystem calls. Large binary files are not held at all: they are streamed from
+ * disk with positional reads, and their entry is checked against the file's size and
+ * modification time on each hit, so it can't describe bytes that were rewritten before the
+ * watcher noticed. A WatchService on the static root drops entries when files change, and
+ * the next request reloads them.
+ */
+class StaticAssetCache {
+    // Bigger text files are streamed from disk instead of being held in memory
+    private static final long MAX_CACHED_BYTES = Long.getLong("handycraft.static.maxCachedBytes", 8L * 1024 * 1024);
+    // Binary files above this size are streamed from disk instead of read onto the heap
+    private static final long STREAM_THRESHOLD_BYTES = Long.getLong("handycraft.static.streamThresholdBytes", 256L * 1024);
+    private static final long IMAGE_MAX_AGE_SECONDS = Long.getLong("handycraft.static.imageMaxAgeSeconds", 86400);
+
+    private static final Map<String, String> MIME_TYPES = Map.ofEntries(
+            Map.entry("html", "text/html; charset=utf-8"),
+            Map.entry("css", "text/css; charset=utf-8"),
+            Map.entry("js", "application/javascript; charset=utf-8"),
+            Map.entry("json", "application/json"),
+            Map.entry("txt", "text/plain; charset=utf-8"),
+            Map.entry("svg", "image/svg+xml"),
+            Map.entry("png", "image/png"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("webp", "image/webp"),
+            Map.entry("ico", "image/x-icon"),
+            Map.entry("woff", "font/woff"),
+            Map.entry("woff2", "font/woff2"));
+
+    static class Asset {
+        final String etag;
+        final String contentType;
+        final long length;
+        final long lastModifiedMillis;
+        final long lastModifiedSeconds;
+        final String lastModified;
+        final String cacheControl;
+        // Exactly one of these is set: heap bytes (with gzip copy) or the file to stream the body from
+        final CachedResponse response;
+        final Path file;
+
+        Asset(String etag, String contentType, long length, long lastModifiedMillis,
+              CachedResponse response, Path file) {
+            this.etag = etag;
+            this.contentType = contentType;
+            this.length = length;
+            this.lastModifiedMillis = lastModifiedMillis;
+            this.lastModifiedSeconds = lastModifiedMillis / 1000;
+            this.lastModified = DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(Instant.ofEpochSecond(lastModifiedSeconds).atZone(ZoneOffset.UTC));
+            this.cacheControl = cacheControl(contentType);
+            this.response = response;
+            this.file = file;
+        }
+    }
+
+    private final Map<Path, Asset> assets = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    StaticAssetCache(Path root) {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            registerTree(root.toAbsolutePath().normalize());
+            Thread watcher = new Thread(this::watchLoop, "static-asset-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        } catch (IOException e) {
+            // Without a watcher stale entries could be served forever, so don't cache at all
+            System.err.println("Static asset watcher unavailable, caching disabled: " + e.getMessage());
+            watchService = null;
+        }
+    }
+
+    /**
+     * The cached asset for a file under the root, loading it on first use.
+     * Returns null if the file doesn't exist, is a directory or is too big to cache.
+     */
+    Asset get(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        Asset asset = assets.get(key);
+        if (asset != null) {
+            if (asset.file == null || unchanged(asset)) return asset;
+            assets.remove(key, asset); // rewritten in place and not evicted yet
+        }
+
+        if (!Files.isRegularFile(key)) {
+            return null;
+        }
+        long size = Files.size(key);
+        String mimeType = mimeType(key);
+        boolean text = isText(mimeType);
+        if (text ? size > MAX_CACHED_BYTES : size > Integer.MAX_VALUE) {
+            return null;
+        }
+        long modified = Files.getLastModifiedTime(key).toMillis();
+        asset = !text && size > STREAM_THRESHOLD_BYTES
+                ? stream(key, mimeType, modified)
+                : load(key, mimeType, modified);
+        if (watchService != null) {
+            assets.put(key, asset);
+            // A change that landed while we were reading may have been evicted before the put
+            if (Files.getLastModifiedTime(key).toMillis() != modified) {
+                assets.remove(key, asset);
+            }
+        }
+        return asset;
+    }
+
+    static String mimeType(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String mimeType = dot < 0 ? null : MIME_TYPES.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        if (mimeType == null) {
+            mimeType = Files.probeContentType(file);
+        }
+        return mimeType == null ? "text/plain" : mimeType;
+    }
+
+    // Strong validator from the content itself, so it only changes when the bytes do
+    private static String etag(long length, CRC32 crc) {
+        return "\"" + Long.toHexString(length) + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    // Pages, styles and scripts aren't fingerprinted, so browsers must revalidate them (cheap 304s).
+    // Images rarely change and may be reused for a while without asking.
+    private static String cacheControl(String mimeType) {
+        return mimeType.startsWith("image/") || mimeType.startsWith("font/")
+                ? "public, max-age=" + IMAGE_MAX_AGE_SECONDS
+                : "no-cache";
+    }
+
+    private Asset load(Path file, String mimeType, long lastModified) throws IOException {
+        byte[] body = Files.readAllBytes(file);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        String etag = etag(body.length, crc);
+        CachedResponse response = new CachedResponse(etag, body, mimeType, isText(mimeType));
+        return new Asset(etag, mimeType, body.length, lastModified, response, null);
+    }
+
+    // Only the metadata is kept; the ETag comes from one pass over the file
+    private Asset stream(Path file, String mimeType, long lastModified) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(0x10000);
+            CRC32 crc = new CRC32();
+            long length = 0;
+            int count;
+            while ((count = channel.read(buffer)) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+                length += count;
+            }
+            return new Asset(etag(length, crc), mimeType, length, lastModified, null, file);
+        }
+    }
+
+    // A streamed file still has the size and modification time its ETag was computed for
+    private static boolean unchanged(Asset asset) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(asset.file, BasicFileAttributes.class);
+            return attributes.isRegularFile() && attributes.size() == asset.length
+                    && attributes.lastModifiedTime().toMillis() == asset.lastModifiedMillis;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isText(String mimeType) {
+        return mimeType.startsWith("text/") || mimeType.startsWith("application/javascript")
+                || mimeType.startsWith("application/json") || mimeType.startsWith("image/svg+xml");
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirectories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = watchedDirectories.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                    assets.clear(); // lost track of what changed
+                    continue;
+                }
+                Path changed = dir.resolve((Path) event.context()).normalize();
+                if (Files.isDirectory(changed)) {
+                    // A new or replaced folder: watch it and forget anything cached below it
+                    assets.keySet().removeIf(path -> path.startsWith(changed));
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        try {
+                            registerTree(changed);
+                        } catch (IOException e) {
+                            System.err.println("Could not watch " + changed + ": " + e.getMessage());
+                        }
+                    }
+                } else {
+                    assets.keySet().removeIf(path -> path.startsWith(changed));
+                }
+            }
+            if (!key.reset()) {
+                watchedDirectories.remove(key);
+                if (dir != null) {
+                    assets.keySet().removeIf(path -> path.startsWith(dir));
+                }
+            }
+        }
+    }
+}
@@ -1,21 +1,42 @@
 package com.handycraft.handlers;
 
 
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import com.handycraft.services.ImageDerivativeService;
+import com.handycraft.utils.QueryUtil;
 import com.handycraft.utils.ResponseUtil;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 public class StaticFileHandler implements HttpHandler {
+    private static final long[] UNSATISFIABLE = new long[0];
+    private static final ThreadLocal<byte[]> TRANSFER_BUFFER = ThreadLocal.withInitial(() -> new byte[0x10000]);
+
+    private static final String PRODUCT_IMAGES = "/images/products/";
+
     private final String rootDirectory;
+    private final StaticAssetCache assetCache;
+    private final ImageDerivativeService imageService = ImageDerivativeService.getInstance();
 
     public StaticFileHandler(String rootDirectory) {
         this.rootDirectory = rootDirectory;
+        this.assetCache = new StaticAssetCache(new File(rootDirectory).toPath());
+        Path productImages = new File(rootDirectory, PRODUCT_IMAGES).toPath();
+        imageService.pruneStale(productImages);
+        if (Boolean.getBoolean("handycraft.images.pregenerate")) {
+            imageService.pregenerate(productImages);
+        }
     }
 
     @Override
@@ -39,16 +60,37 @@ public class StaticFileHandler implements HttpHandler {
             return;
         }
 
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+
+        // Product images can be requested resized: /images/products/x.jpg?w=320
+        Path source = resolvedPath;
+        boolean derivativeMissing = false;
+        if (path.startsWith(PRODUCT_IMAGES)) {
+            int width = QueryUtil.getInt(QueryUtil.parse(exchange.getRequestURI().getRawQuery()), "w", 0, 0, 10000);
+            if (width > 0) {
+                Path derivative = imageService.getDerivative(resolvedPath, width);
+                if (derivative != null) {
+                    source = derivative;
+                } else {
+                    derivativeMissing = true;
+                }
+            }
+        }
+
+        // Served from memory when cached
+        StaticAssetCache.Asset asset = assetCache.get(source);
+        if (asset != null) {
+            // A full-size stand-in must not be kept by the browser under the resized URL
+            sendAsset(exchange, asset, derivativeMissing ? "no-cache" : asset.cacheControl);
+            return;
+        }
+
         // Serve the file if it exists
         if (file.exists() && !file.isDirectory()) {
-            String mimeType = Files.probeContentType(file.toPath());
-            if (mimeType == null) {
-                mimeType = "text/plain";
-            }
+            String mimeType = StaticAssetCache.mimeType(file.toPath());
 
             // Set headers and send the file content
             exchange.getResponseHeaders().set("Content-Type", mimeType);
-            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
             exchange.sendResponseHeaders(200, file.length());
 
             try (FileInputStream fs = new FileInputStream(file);
@@ -64,4 +106,136 @@ public class StaticFileHandler implements HttpHandler {
             ResponseUtil.sendResponse(exchange, 404, "{\"message\": \"404 Not Found\"}", "application/json");
         }
     }
-}
\ No newline at end of file
+
+    private void sendAsset(HttpExchange exchange, StaticAssetCache.Asset asset, String cacheControl) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        // Tag the copy a full response would carry, so a 304 names it too
+        boolean gzip = asset.response != null && ResponseUtil.sendsGzip(exchange, asset.response);
+        headers.set("ETag", gzip ? asset.response.getGzipEtag() : asset.etag);
+        headers.set("Last-Modified", asset.lastModified);
+        headers.set("Cache-Control", cacheControl);
+        headers.set("Accept-Ranges", "bytes");
+
+        // If-None-Match wins over If-Modified-Since when both are sent
+        Headers request = exchange.getRequestHeaders();
+        String ifNoneMatch = request.getFirst("If-None-Match");
+        boolean etagMatches = asset.response != null
+                ? ResponseUtil.etagMatches(ifNoneMatch, asset.response)
+                : ResponseUtil.etagMatches(ifNoneMatch, asset.etag);
+        if (ifNoneMatch != null ? etagMatches
+                : notModifiedSince(request.getFirst("If-Modified-Since"), asset)) {
+            ResponseUtil.sendNotModified(exchange);
+            return;
+        }
+
+        String range = request.getFirst("Range");
+        if (range != null && exchange.getRequestMethod().equalsIgnoreCase("GET")
+                && rangeStillValid(request.getFirst("If-Range"), asset)) {
+            long[] bounds = parseRange(range, asset.length);
+            if (bounds == UNSATISFIABLE) {
+                headers.set("Content-Range", "bytes */" + asset.length);
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            if (bounds != null) {
+                long length = bounds[1] - bounds[0] + 1;
+                // Ranges are cut from the identity bytes
+                headers.set("ETag", asset.etag);
+                headers.set("Content-Type", asset.contentType);
+                headers.set("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + asset.length);
+                exchange.sendResponseHeaders(206, length);
+                writeBody(exchange, asset, bounds[0], length);
+                return;
+            }
+        }
+
+        if (asset.response != null) {
+            ResponseUtil.sendCached(exchange, asset.response);
+        } else {
+            headers.set("Content-Type", asset.contentType);
+            exchange.sendResponseHeaders(200, asset.length);
+            writeBody(exchange, asset, 0, asset.length);
+        }
+    }
+
+    // Identity-encoded bytes [offset, offset + length) of the asset
+    private void writeBody(HttpExchange exchange, StaticAssetCache.Asset asset, long offset, long length) throws IOException {
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (asset.response != null) {
+                os.write(asset.response.getBody(), (int) offset, (int) length);
+                return;
+            }
+            // The exchange only offers a stream, so the file goes out through a small reused buffer
+            byte[] buffer = TRANSFER_BUFFER.get();
+            try (FileChannel channel = FileChannel.open(asset.file, StandardOpenOption.READ)) {
+                long position = offset;
+                long end = offset + length;
+                while (position < end) {
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, (int) Math.min(buffer.length, end - position));
+                    int count = channel.read(chunk, position);
+                    if (count < 0) {
+                        // Truncated since it was checked; the short body makes the client discard it
+                        throw new IOException(asset.file.getFileName() + " changed while being sent");
+                    }
+                    os.write(buffer, 0, count);
+                    position += count;
+                }
+            }
+        }
+    }
+
+    /**
+     * A single "bytes=" range as {first, last}, clamped to the file. Returns null to send the
+     * whole file (malformed or multi-range requests) and UNSATISFIABLE when it starts past the end.
+     */
+    private static long[] parseRange(String header, long fileLength) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) return null;
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // bytes=-N: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, fileLength - suffix), fileLength - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? fileLength - 1 : Math.min(Long.parseLong(last), fileLength - 1);
+            if (start >= fileLength) return UNSATISFIABLE;
+            if (end < start) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // If-Range holds the ETag or date the client's partial copy came from; only resume if it's still current
+    private static boolean rangeStillValid(String ifRange, StaticAssetCache.Asset asset) {
+        if (ifRange == null) return true;
+        String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return value.equals(asset.etag); // weak tags never match here
+        }
+        try {
+            long date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return date == asset.lastModifiedSeconds;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean notModifiedSince(String ifModifiedSince, StaticAssetCache.Asset asset) {
+        if (ifModifiedSince == null) return false;
+        try {
+            long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return asset.lastModifiedSeconds <= since;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
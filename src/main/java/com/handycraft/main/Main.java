@@ -1,5 +1,6 @@
 package com.handycraft.main;
 
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpServer;
 import com.handycraft.handlers.AuthHandler;
 import com.handycraft.handlers.ProductHandler;
@@ -11,8 +12,13 @@ import com.handycraft.handlers.ProfileHandler;
 import com.handycraft.handlers.OrderHandler;
 import com.handycraft.handlers.PasswordResetHandler;
 
+import com.handycraft.utils.Bulkhead;
+import com.handycraft.utils.RateLimitFilter;
+import com.handycraft.utils.RequestExecutor;
+
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
     private static final int PORT = 8000;
@@ -23,28 +29,49 @@ public class Main {
         try {
             HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
 
+            // Route groups get their own bounded pools so one can't starve another
+            Bulkhead staticAssets = new Bulkhead("static", 8, 200);
+            Bulkhead catalog = new Bulkhead("catalog", 8, 100);
+            Bulkhead checkout = new Bulkhead("checkout", 4, 50);
+            Bulkhead account = new Bulkhead("account", 4, 50);
+            Bulkhead admin = new Bulkhead("admin", 2, 20);
+
             // Static File Handler
-            server.createContext("/", new StaticFileHandler(STATIC_ROOT));
+            List<HttpContext> contexts = new ArrayList<>();
+            contexts.add(server.createContext("/", staticAssets.wrap(new StaticFileHandler(STATIC_ROOT))));
 
             // API Handlers
-            server.createContext("/api/auth", new AuthHandler());
-            server.createContext("/api/products", new ProductHandler());
-            server.createContext("/api/checkout", new CartHandler());
-            server.createContext("/api/admin", new AdminHandler());
-            server.createContext("/api/feedback", new FeedbackHandler());
-            server.createContext("/api/profile", new ProfileHandler());
+            HttpContext auth = server.createContext("/api/auth", account.wrap(new AuthHandler()));
+            auth.getFilters().add(new RateLimitFilter()
+                    .limit("login", 10, 20)
+                    .limit("register", 5, 5));
+            contexts.add(auth);
+            contexts.add(server.createContext("/api/products", catalog.wrap(new ProductHandler())));
+            contexts.add(server.createContext("/api/checkout", checkout.wrap(new CartHandler())));
+            contexts.add(server.createContext("/api/admin", admin.wrap(new AdminHandler())));
+            contexts.add(server.createContext("/api/feedback", catalog.wrap(new FeedbackHandler())));
+            contexts.add(server.createContext("/api/profile", account.wrap(new ProfileHandler())));
 
             // Password Reset Handler
-            server.createContext("/api/password-reset", new PasswordResetHandler());
+            HttpContext passwordReset = server.createContext("/api/password-reset", account.wrap(new PasswordResetHandler()));
+            passwordReset.getFilters().add(new RateLimitFilter()
+                    .limit("questions", 10, 10)
+                    .limit("reset", 5, 5));
+            contexts.add(passwordReset);
 
-            server.createContext("/api/orders", new OrderHandler());
+            contexts.add(server.createContext("/api/orders", checkout.wrap(new OrderHandler())));
 
-            // Server Configuration
-            server.setExecutor(Executors.newFixedThreadPool(10));
+            // Server Configuration: requests the executor has no room for get a 503 from this filter
+            for (HttpContext context : contexts) {
+                context.getFilters().add(0, RequestExecutor.overloadFilter());
+            }
+            RequestExecutor executor = RequestExecutor.getInstance();
+            server.setExecutor(executor);
             server.start();
 
             System.out.println("Handy Craft Server is running on: http://localhost:" + PORT);
             System.out.println("Static files served from: " + STATIC_ROOT);
+            System.out.println("Request executor: " + executor.getMetrics().get("mode"));
 
         } catch (Exception e) {
             System.err.println("FATAL ERROR: Could not start the HTTP Server.");
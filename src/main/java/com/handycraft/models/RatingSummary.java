@@ -0,0 +1,32 @@
+package com.handycraft.models;
+
+// Immutable per-product rating aggregate. Updated by creating a new instance per review change.
+public class RatingSummary {
+    private final int count;
+    private final transient long sum;
+    private final double average;
+    // histogram[0] holds 1-star reviews, histogram[4] holds 5-star reviews
+    private final int[] histogram;
+
+    public static final RatingSummary EMPTY = new RatingSummary(0, 0, new int[5]);
+
+    private RatingSummary(int count, long sum, int[] histogram) {
+        this.count = count;
+        this.sum = sum;
+        this.average = count == 0 ? 0.0 : (double) sum / count;
+        this.histogram = histogram;
+    }
+
+    // Returns a summary with one review added (delta = 1) or removed (delta = -1)
+    public RatingSummary with(int rating, int delta) {
+        int[] updated = histogram.clone();
+        if (rating >= 1 && rating <= 5) {
+            updated[rating - 1] += delta;
+        }
+        return new RatingSummary(count + delta, sum + (long) rating * delta, updated);
+    }
+
+    public int getCount() { return count; }
+    public double getAverage() { return average; }
+    public int[] getHistogram() { return histogram.clone(); }
+}
@@ -1,34 +1,140 @@
 package com.handycraft.services;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import com.handycraft.models.ActivityLog;
+import com.handycraft.utils.RingBuffer;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Activity log with non-blocking ingestion. addLog only puts the entry on a bounded
+ * lock-free ring buffer; a single writer thread drains it in batches and appends
+ * newline-delimited JSON to segment files that roll over by date and size.
+ * Queries are answered from timestamp-ordered indexes, overall and per username.
+ */
 public class ActivityLogService {
 
-    private static final String LOG_FILE_PATH = "src/main/resources/data/activity_logs.json";
+    private static final String DATA_DIR = "src/main/resources/data";
+    // Pre-NDJSON log, still read at startup
+    private static final String LEGACY_LOG_FILE_PATH = DATA_DIR + "/activity_logs.json";
+    private static final String SEGMENT_DIR = DATA_DIR + "/activity_logs";
+    private static final String SEGMENT_PREFIX = "activity-";
+    private static final String SEGMENT_SUFFIX = ".ndjson";
 
-    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    private List<ActivityLog> logs;
-    private final ReentrantLock lock = new ReentrantLock();
+    private static final int BUFFER_SIZE = Integer.getInteger("handycraft.logs.bufferSize", 4096);
+    private static final long MAX_SEGMENT_BYTES = Long.getLong("handycraft.logs.maxSegmentBytes", 8L * 1024 * 1024);
+    private static final int MAX_BATCH = 512;
+    private static final long IDLE_PARK_NANOS = 100_000_000L;
 
-    public ActivityLogService() {
+    private final Gson gson = new Gson();
+    private final RingBuffer<ActivityLog> buffer = new RingBuffer<>(BUFFER_SIZE);
+
+    // Orders entries by timestamp ("yyyy-MM-dd HH:mm:ss" sorts as text), then by arrival
+    private static class LogKey implements Comparable<LogKey> {
+        final String timestamp;
+        final long sequence;
+
+        LogKey(String timestamp, long sequence) {
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(LogKey other) {
+            int byTime = timestamp.compareTo(other.timestamp);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // One page of a log query, newest first. nextCursor is null on the last page.
+    public static class LogPage {
+        private final List<ActivityLog> items;
+        private final String nextCursor;
+
+        LogPage(List<ActivityLog> items, String nextCursor) {
+            this.items = items;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<ActivityLog> getItems() { return items; }
+        public String getNextCursor() { return nextCursor; }
+    }
+
+    private final ConcurrentSkipListMap<LogKey, ActivityLog> logsByTime = new ConcurrentSkipListMap<>();
+    private final Map<String, ConcurrentSkipListMap<LogKey, ActivityLog>> logsByUsername = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder logCount = new LongAdder();
+    // Entries per "yyyy-MM-dd" timestamp prefix, for the dashboard's count of today's activity
+    private final Map<String, LongAdder> countByDay = new ConcurrentHashMap<>();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    // addLog holds the read side while it queues and indexes an entry, clearAllLogs the write side,
+    // so an entry added during a clear is either cleared with the rest or kept whole
+    private final ReentrantReadWriteLock clearLock = new ReentrantReadWriteLock();
+
+    // Writer state, guarded by writerLock
+    private final Object writerLock = new Object();
+    private BufferedWriter segmentWriter;
+    private LocalDate segmentDate;
+    private long segmentBytes;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private static ActivityLogService instance;
+
+    public static synchronized ActivityLogService getInstance() {
+        if (instance == null) {
+            instance = new ActivityLogService();
+        }
+        return instance;
+    }
+
+    private ActivityLogService() {
         //load existing logs
-        this.logs = loadLogsFromFile();
+        loadLegacyLogs().forEach(this::index);
+        for (File segment : listSegments()) {
+            readSegment(segment).forEach(this::index);
+        }
+
+        writerThread = new Thread(this::runWriter, "activity-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "activity-log-shutdown"));
     }
 
-    private List<ActivityLog> loadLogsFromFile() {
-        File file = new File(LOG_FILE_PATH);
+    private List<ActivityLog> loadLegacyLogs() {
+        File file = new File(LEGACY_LOG_FILE_PATH);
         //return empty list if file doesn't exist
         if (!file.exists() || file.length() == 0) {
             return new ArrayList<>();
@@ -47,35 +153,265 @@ public class ActivityLogService {
         }
     }
 
-    private void saveLogsToFile() {
-        lock.lock();
-        try {
-            File dataDir = new File("src/main/resources/data");
-            if (!dataDir.exists()) {
-                dataDir.mkdirs();
+    private void index(ActivityLog log) {
+        LogKey key = new LogKey(log.getTimestamp() == null ? "" : log.getTimestamp(), sequence.incrementAndGet());
+        logsByTime.put(key, log);
+        logsByUsername.computeIfAbsent(usernameKey(log.getUsername()), u -> new ConcurrentSkipListMap<>()).put(key, log);
+        logCount.increment();
+        countByDay.computeIfAbsent(dayOf(key.timestamp), d -> new LongAdder()).increment();
+    }
+
+    private static String dayOf(String timestamp) {
+        return timestamp.length() > 10 ? timestamp.substring(0, 10) : timestamp;
+    }
+
+    private static String usernameKey(String username) {
+        return username == null ? "" : username.toLowerCase(Locale.ROOT);
+    }
+
+    private List<ActivityLog> readSegment(File segment) {
+        List<ActivityLog> entries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(segment), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    ActivityLog log = gson.fromJson(line, ActivityLog.class);
+                    if (log != null) entries.add(log);
+                } catch (JsonParseException e) {
+                    System.err.println("Skipping corrupt activity log line in " + segment.getName());
+                }
             }
+        } catch (IOException e) {
+            System.err.println("Error reading activity log segment " + segment.getName() + ": " + e.getMessage());
+        }
+        return entries;
+    }
 
-            try (FileWriter writer = new FileWriter(LOG_FILE_PATH)) {
-                gson.toJson(this.logs, writer);
+    // Segment names sort chronologically: activity-<date>-<sequence>.ndjson
+    private File[] listSegments() {
+        File[] files = new File(SEGMENT_DIR).listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    private void runWriter() {
+        List<ActivityLog> batch = new ArrayList<>(MAX_BATCH);
+        while (running || buffer.size() > 0) {
+            batch.clear();
+            // Drain and write under the lock, so clearAllLogs never runs between the two
+            synchronized (writerLock) {
+                if (buffer.drainTo(batch, MAX_BATCH) > 0) {
+                    writeBatch(batch);
+                    continue;
+                }
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    // Called with writerLock held
+    private void writeBatch(List<ActivityLog> batch) {
+        try {
+            for (ActivityLog log : batch) {
+                String line = gson.toJson(log) + "\n";
+                rollSegmentIfNeeded();
+                segmentWriter.write(line);
+                segmentBytes += line.getBytes(StandardCharsets.UTF_8).length;
             }
+            segmentWriter.flush();
+            written.add(batch.size());
         } catch (IOException e) {
-            System.err.println("Error saving activity logs: " + e.getMessage());
+            // The batch is lost from disk (it stays in memory until restart); report it with the drops
+            System.err.println("Error saving activity logs, dropping " + batch.size() + " entries: " + e.getMessage());
+            dropped.add(batch.size());
+            closeSegment();
+        }
+    }
+
+    // Starts a new segment on a new day or when the current one is full
+    private void rollSegmentIfNeeded() throws IOException {
+        LocalDate today = LocalDate.now();
+        if (segmentWriter != null && today.equals(segmentDate) && segmentBytes < MAX_SEGMENT_BYTES) {
+            return;
+        }
+        closeSegment();
+
+        File dir = new File(SEGMENT_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        int sequence = 0;
+        File file;
+        do {
+            file = new File(dir, SEGMENT_PREFIX + today + "-" + String.format("%04d", sequence++) + SEGMENT_SUFFIX);
+        } while (file.exists() && file.length() >= MAX_SEGMENT_BYTES);
+
+        segmentWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        segmentDate = today;
+        segmentBytes = file.length();
+    }
+
+    private void closeSegment() {
+        if (segmentWriter != null) {
+            try {
+                segmentWriter.close();
+            } catch (IOException e) {
+                System.err.println("Error closing activity log segment: " + e.getMessage());
+            }
+            segmentWriter = null;
+        }
+    }
+
+    private void shutdown() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (writerLock) {
+            closeSegment();
+        }
+    }
+
+    /**
+     * Queues a log entry and returns immediately; it only waits while clearAllLogs runs.
+     * Returns false if the buffer is full and the entry was dropped.
+     */
+    public boolean addLog(ActivityLog log) {
+        clearLock.readLock().lock();
+        try {
+            if (!buffer.offer(log)) {
+                dropped.increment();
+                return false;
+            }
+            enqueued.increment();
+            index(log);
         } finally {
-            lock.unlock();
+            clearLock.readLock().unlock();
+        }
+        LockSupport.unpark(writerThread);
+        return true;
+    }
+
+    public List<ActivityLog> getAllLogs() {
+        return new ArrayList<>(logsByTime.values());
+    }
+
+    /**
+     * Newest-first page of entries. from/to are inclusive timestamp prefixes
+     * ("2026-01-11" covers the whole day); username matches exactly and action as a
+     * substring, both ignoring case. Any filter may be null.
+     */
+    public LogPage queryLogs(String from, String to, String username, String action, int limit, String cursor) {
+        NavigableMap<LogKey, ActivityLog> index = username == null || username.isBlank()
+                ? logsByTime
+                : logsByUsername.get(usernameKey(username));
+        if (index == null) {
+            return new LogPage(new ArrayList<>(), null);
         }
+
+        LogKey lower = new LogKey(from == null ? "" : from, Long.MIN_VALUE);
+        LogKey upper = new LogKey(to == null ? "\uffff" : to + "\uffff", Long.MAX_VALUE);
+        LogKey after = decodeCursor(cursor);
+        if (after != null && after.compareTo(upper) < 0) {
+            upper = after;
+        }
+        if (lower.compareTo(upper) > 0) {
+            return new LogPage(new ArrayList<>(), null);
+        }
+
+        String actionFilter = action == null || action.isBlank() ? null : action.toLowerCase(Locale.ROOT);
+        List<ActivityLog> items = new ArrayList<>();
+        LogKey last = null;
+        boolean more = false;
+        for (Map.Entry<LogKey, ActivityLog> entry : index.subMap(lower, true, upper, after == null).descendingMap().entrySet()) {
+            ActivityLog log = entry.getValue();
+            if (actionFilter != null && (log.getAction() == null
+                    || !log.getAction().toLowerCase(Locale.ROOT).contains(actionFilter))) {
+                continue;
+            }
+            if (items.size() == limit) {
+                more = true;
+                break;
+            }
+            items.add(log);
+            last = entry.getKey();
+        }
+        return new LogPage(items, more ? encodeCursor(last) : null);
+    }
+
+    // Totals for the dashboard cards: entries overall and on the given day (yyyy-MM-dd), distinct admins, latest timestamp
+    public Map<String, Object> getSummary(String day) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("total", logCount.sum());
+        LongAdder onDay = countByDay.get(day);
+        summary.put("today", onDay == null ? 0L : onDay.sum());
+        summary.put("activeAdmins", logsByUsername.size());
+        Map.Entry<LogKey, ActivityLog> latest = logsByTime.lastEntry();
+        summary.put("lastActivity", latest == null ? null : latest.getKey().timestamp);
+        return summary;
     }
 
-    public synchronized void addLog(ActivityLog log) {
-            this.logs.add(log);
-            saveLogsToFile();
+    private static String encodeCursor(LogKey key) {
+        String raw = key.sequence + "|" + key.timestamp;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
     }
 
-    public synchronized List<ActivityLog> getAllLogs() {
-            return new ArrayList<>(this.logs);
+    private static LogKey decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int bar = raw.indexOf('|');
+            return new LogKey(raw.substring(bar + 1), Long.parseLong(raw.substring(0, bar)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    public void clearAllLogs() {
+        clearLock.writeLock().lock();
+        try {
+            clearUnderLocks();
+        } finally {
+            clearLock.writeLock().unlock();
+        }
+    }
+
+    private void clearUnderLocks() {
+        synchronized (writerLock) {
+            // Anything still queued belongs to the history being cleared
+            buffer.drainTo(new ArrayList<>(), Integer.MAX_VALUE);
+            logsByTime.clear();
+            logsByUsername.clear();
+            logCount.reset();
+            countByDay.clear();
+            closeSegment();
+            for (File segment : listSegments()) {
+                if (!segment.delete()) {
+                    System.err.println("Could not delete activity log segment " + segment.getName());
+                }
+            }
+            try (FileWriter writer = new FileWriter(LEGACY_LOG_FILE_PATH)) {
+                writer.write("[]");
+            } catch (IOException e) {
+                System.err.println("Error saving activity logs: " + e.getMessage());
+            }
+        }
     }
 
-    public synchronized void clearAllLogs() {
-            this.logs.clear();
-            saveLogsToFile();
+    // Ingestion counters for monitoring
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("enqueued", enqueued.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("written", written.sum());
+        metrics.put("queued", (long) buffer.size());
+        metrics.put("bufferCapacity", (long) buffer.capacity());
+        return metrics;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,244 @@
+package com.handycraft.services;
+
+import com.google.gson.Gson;
+import com.handycraft.models.Order;
+import com.handycraft.models.Product;
+import com.handycraft.utils.CachedResponse;
+import com.handycraft.utils.OrderDates;
+import com.handycraft.utils.OrderItems;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Best-selling products by units and by revenue over the last 24 hours, 7 days and 30 days,
+ * kept up to date from order events. Only sold orders (Shipped or Completed) count, at the
+ * time they were placed.
+ *
+ * Each product that has sold keeps a ring of hourly buckets reaching back 7 days (for the
+ * 24h and 7d windows) and a ring of daily buckets reaching back 30 days. A bucket is reused
+ * once its hour or day has left the ring, so a window holds exactly the sales of its last
+ * 24 or 168 hours, or 30 days, measured in whole hours and days. Rankings are summed from
+ * the buckets with a bounded heap, and the JSON is built at most once per change (or per
+ * hour, as sales leave the windows) and served from a CachedResponse.
+ */
+public class BestsellerService implements OrderListener {
+    private static final int TOP_K = Integer.getInteger("handycraft.bestsellers.k", 10);
+    private static final long HOUR_MS = 3_600_000L;
+    private static final long DAY_MS = 24 * HOUR_MS;
+    private static final String[] WINDOW_NAMES = {"24h", "7d", "30d"};
+    private static final int HOURS = 7 * 24;
+    private static final int DAYS = 30;
+
+    private static BestsellerService instance;
+
+    private final ProductService productService = ProductService.getInstance();
+    private final Gson gson = new Gson();
+    private final String versionEpoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // Guarded by this
+    private final Map<String, Sales> salesByProduct = new HashMap<>();
+    // Bumped on every change; read without the lock to serve the cached JSON
+    private volatile long version;
+
+    private volatile Snapshot snapshot;
+
+    private static class Snapshot {
+        final long version;
+        final long hour;
+        final CachedResponse response;
+
+        Snapshot(long version, long hour, CachedResponse response) {
+            this.version = version;
+            this.hour = hour;
+            this.response = response;
+        }
+    }
+
+    // One product's sales in hourly and daily buckets, each slot tagged with the hour or day it holds
+    private static class Sales {
+        final int[] hours = new int[HOURS];
+        final long[] hourUnits = new long[HOURS];
+        final long[] hourCents = new long[HOURS];
+        final int[] days = new int[DAYS];
+        final long[] dayUnits = new long[DAYS];
+        final long[] dayCents = new long[DAYS];
+        int lastDay;
+
+        // sign is -1 to withdraw a sale added earlier
+        void add(int hour, int day, int sign, long units, long cents) {
+            int h = Math.floorMod(hour, HOURS);
+            if (hours[h] < hour && sign > 0) {
+                hours[h] = hour;
+                hourUnits[h] = 0;
+                hourCents[h] = 0;
+            }
+            // A slot already holding a later hour means this sale is older than the ring
+            if (hours[h] == hour) {
+                hourUnits[h] += sign * units;
+                hourCents[h] += sign * cents;
+            }
+            int d = Math.floorMod(day, DAYS);
+            if (days[d] < day && sign > 0) {
+                days[d] = day;
+                dayUnits[d] = 0;
+                dayCents[d] = 0;
+            }
+            if (days[d] == day) {
+                dayUnits[d] += sign * units;
+                dayCents[d] += sign * cents;
+            }
+            lastDay = Math.max(lastDay, day);
+        }
+
+        // Units and cents since the given hour (exclusive) or day, into totals[0] and totals[1]
+        void sumHours(int after, long[] totals) {
+            for (int i = 0; i < HOURS; i++) {
+                if (hours[i] > after) {
+                    totals[0] += hourUnits[i];
+                    totals[1] += hourCents[i];
+                }
+            }
+        }
+
+        void sumDays(int after, long[] totals) {
+            for (int i = 0; i < DAYS; i++) {
+                if (days[i] > after) {
+                    totals[0] += dayUnits[i];
+                    totals[1] += dayCents[i];
+                }
+            }
+        }
+    }
+
+    private BestsellerService() {}
+
+    public static synchronized BestsellerService getInstance() {
+        if (instance == null) {
+            instance = new BestsellerService();
+            OrderService.getInstance().addOrderListener(instance);
+        }
+        return instance;
+    }
+
+    @Override
+    public synchronized void orderChanged(Order order, String oldStatus, String newStatus) {
+        boolean wasSold = isSold(oldStatus);
+        boolean sold = isSold(newStatus);
+        if (wasSold == sold) return;
+
+        ZonedDateTime date = OrderDates.parse(order.getOrderDate());
+        if (date == null || order.getItems() == null) return;
+        long time = date.toInstant().toEpochMilli();
+        int hour = (int) Math.floorDiv(time, HOUR_MS);
+        int day = (int) Math.floorDiv(time, DAY_MS);
+
+        int sign = sold ? 1 : -1;
+        for (Map<String, Object> item : order.getItems()) {
+            String productId = OrderItems.productId(item);
+            if (productId == null) continue;
+            int units = OrderItems.quantity(item);
+            long cents = Math.round(OrderItems.price(item) * units * 100);
+            salesByProduct.computeIfAbsent(productId, k -> new Sales()).add(hour, day, sign, units, cents);
+        }
+        version++;
+    }
+
+    /**
+     * Rankings for every window, best first, as cached JSON:
+     * {"windows": {"24h": {"units": [...], "revenue": [...]}, "7d": ..., "30d": ...}}.
+     * Each entry has the product's id, name, price and image with its units and revenue in the window.
+     */
+    public CachedResponse getTopResponse() {
+        long hour = System.currentTimeMillis() / HOUR_MS;
+        Snapshot current = snapshot;
+        if (current != null && current.version == version && current.hour == hour) {
+            return current.response;
+        }
+        synchronized (this) {
+            current = snapshot; // another request may have just rebuilt it
+            if (current != null && current.version == version && current.hour == hour) {
+                return current.response;
+            }
+            byte[] body = gson.toJson(build(System.currentTimeMillis())).getBytes(StandardCharsets.UTF_8);
+            String etag = "\"top-" + versionEpoch + "-" + version + "-" + hour + "\"";
+            current = new Snapshot(version, hour, new CachedResponse(etag, body, "application/json"));
+            snapshot = current;
+            return current.response;
+        }
+    }
+
+    // Called with the lock held
+    private Map<String, Object> build(long now) {
+        int hour = (int) Math.floorDiv(now, HOUR_MS);
+        int day = (int) Math.floorDiv(now, DAY_MS);
+
+        // totals[window][product] = {units, cents}, for products that sold in the last 30 days
+        List<String> products = new ArrayList<>();
+        List<long[][]> totals = new ArrayList<>();
+        for (Map.Entry<String, Sales> entry : salesByProduct.entrySet()) {
+            Sales sales = entry.getValue();
+            if (sales.lastDay <= day - DAYS) continue;
+            long[][] product = new long[WINDOW_NAMES.length][2];
+            sales.sumHours(hour - 24, product[0]);
+            sales.sumHours(hour - HOURS, product[1]);
+            sales.sumDays(day - DAYS, product[2]);
+            products.add(entry.getKey());
+            totals.add(product);
+        }
+
+        Map<String, Object> windows = new LinkedHashMap<>();
+        for (int w = 0; w < WINDOW_NAMES.length; w++) {
+            Map<String, Object> window = new LinkedHashMap<>();
+            window.put("units", entries(products, totals, w, 0));
+            window.put("revenue", entries(products, totals, w, 1));
+            windows.put(WINDOW_NAMES[w], window);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("generatedAt", now);
+        result.put("windows", windows);
+        return result;
+    }
+
+    // The TOP_K products with the most units (measure 0) or cents (measure 1) in the window, best first
+    private List<Map<String, Object>> entries(List<String> products, List<long[][]> totals, int window, int measure) {
+        // Worst first: fewer sold, then the higher product id
+        Comparator<Integer> worstFirst = Comparator.<Integer>comparingLong(i -> totals.get(i)[window][measure])
+                .thenComparing(products::get, Comparator.reverseOrder());
+        PriorityQueue<Integer> heap = new PriorityQueue<>(TOP_K + 1, worstFirst);
+        for (int i = 0; i < products.size(); i++) {
+            if (totals.get(i)[window][measure] <= 0) continue;
+            heap.add(i);
+            if (heap.size() > TOP_K) heap.poll();
+        }
+        List<Integer> ranked = new ArrayList<>(heap);
+        ranked.sort(worstFirst.reversed());
+
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (int i : ranked) {
+            Product p = productService.getProductById(products.get(i));
+            if (p == null) continue; // deleted since it sold
+            long[] sold = totals.get(i)[window];
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("id", p.getId());
+            entry.put("name", p.getName());
+            entry.put("price", p.getPrice());
+            entry.put("imageUrl", p.getImageUrl());
+            entry.put("units", sold[0]);
+            entry.put("revenue", sold[1] / 100.0);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static boolean isSold(String status) {
+        return "Shipped".equalsIgnoreCase(status) || "Completed".equalsIgnoreCase(status);
+    }
+}
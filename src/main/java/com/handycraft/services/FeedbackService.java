@@ -3,8 +3,11 @@ package com.handycraft.services;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.handycraft.models.Feedback;
+import com.handycraft.models.RatingSummary;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class FeedbackService {
@@ -14,26 +17,91 @@ public class FeedbackService {
             .create();
     private final ReentrantLock lock = new ReentrantLock();
 
+    // Loaded once; reads never touch the disk after startup
+    private final List<Feedback> feedback;
+    private final Map<String, Feedback> feedbackById = new HashMap<>();
+    private final Map<String, List<Feedback>> feedbackByProduct = new ConcurrentHashMap<>();
+    private final Map<String, RatingSummary> ratingsByProduct = new ConcurrentHashMap<>();
+
+    private static FeedbackService instance;
+
+    private FeedbackService() {
+        this.feedback = loadFeedbackFromFile();
+        for (Feedback fb : feedback) {
+            index(fb);
+        }
+    }
+
+    public static synchronized FeedbackService getInstance() {
+        if (instance == null) {
+            instance = new FeedbackService();
+        }
+        return instance;
+    }
+
+    private List<Feedback> loadFeedbackFromFile() {
+        File file = new File(FILE_PATH);
+        if (!file.exists() || file.length() == 0) {
+            return new ArrayList<>();
+        }
+        try (FileReader reader = new FileReader(file)) {
+            // Using GSON to convert JSON file content back into a Java List
+            List<Feedback> loaded = gson.fromJson(reader, new TypeToken<ArrayList<Feedback>>(){}.getType());
+            return loaded != null ? loaded : new ArrayList<>();
+        } catch (IOException e) {
+            System.err.println("Error reading feedback file: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private void index(Feedback fb) {
+        if (fb.getId() != null) {
+            feedbackById.put(fb.getId(), fb);
+        }
+        if (fb.getProductId() != null) {
+            feedbackByProduct.computeIfAbsent(fb.getProductId(), id -> new CopyOnWriteArrayList<>()).add(fb);
+            ratingsByProduct.merge(fb.getProductId(), RatingSummary.EMPTY.with(fb.getRating(), 1),
+                    (current, ignored) -> current.with(fb.getRating(), 1));
+        }
+    }
+
+    private void unindex(Feedback fb) {
+        feedbackById.remove(fb.getId());
+        if (fb.getProductId() != null) {
+            List<Feedback> reviews = feedbackByProduct.get(fb.getProductId());
+            if (reviews != null) {
+                reviews.remove(fb);
+            }
+            ratingsByProduct.computeIfPresent(fb.getProductId(), (id, current) -> current.with(fb.getRating(), -1));
+        }
+    }
+
     public void addFeedback(Feedback fb) throws IOException {
         lock.lock();
         try {
-            List<Feedback> all = getAllFeedback();
-            all.add(fb);
-            saveAllFeedback(all);
+            // Save first, so a failed write leaves the reviews and rating summary as they were
+            List<Feedback> updated = new ArrayList<>(feedback);
+            updated.add(fb);
+            saveAllFeedback(updated);
+            feedback.add(fb);
+            index(fb);
         } finally { lock.unlock(); }
     }
     // Delete Logic
     public boolean deleteFeedback(String id) {
         lock.lock();
         try {
-            List<Feedback> all = getAllFeedback();
-            boolean removed = all.removeIf(fb -> fb.getId().equals(id));
-
-            if (removed) {
-                saveAllFeedback(all);
-                return true;
+            Feedback fb = feedbackById.get(id);
+            if (fb == null) {
+                return false;
             }
-            return false;
+
+            List<Feedback> updated = new ArrayList<>(feedback);
+            updated.remove(fb);
+            saveAllFeedback(updated);
+            feedback.remove(fb);
+            unindex(fb);
+            return true;
         } catch (IOException e) {
             System.err.println("Error saving file after delete: " + e.getMessage());
             return false;
@@ -50,40 +118,25 @@ public class FeedbackService {
     }
 
     public List<Feedback> getFeedbackByProduct(String productId) {
-        List<Feedback> filtered = new ArrayList<>();
-        for (Feedback f : getAllFeedback()) {
-            if (f.getProductId().equals(productId)) filtered.add(f);
-        }
-        return filtered;
+        List<Feedback> reviews = feedbackByProduct.get(productId);
+        return reviews == null ? new ArrayList<>() : new ArrayList<>(reviews);
     }
 
     public List<Feedback> getAllFeedback() {
         lock.lock();
         try {
-            File file = new File(FILE_PATH);
-            if (!file.exists() || file.length() == 0) {
-                return new ArrayList<>();
-            }
-            try (FileReader reader = new FileReader(file)) {
-                // Using GSON to convert JSON file content back into a Java List
-                return gson.fromJson(reader, new TypeToken<List<Feedback>>(){}.getType());
-            } catch (IOException e) {
-                System.err.println("Error reading feedback file: " + e.getMessage());
-                return new ArrayList<>();
-            }
+            return new ArrayList<>(feedback);
         } finally {
             lock.unlock();
         }
     }
 
-    public double getAverageRating(String productId) {
-        List<Feedback> productFeedback = getFeedbackByProduct(productId);
-        if (productFeedback.isEmpty()) return 0.0;
+    // Running count, sum and 1-5 star histogram, maintained by addFeedback and deleteFeedback
+    public RatingSummary getRatingSummary(String productId) {
+        return ratingsByProduct.getOrDefault(productId, RatingSummary.EMPTY);
+    }
 
-        double sum = 0;
-        for (Feedback f : productFeedback) {
-            sum += f.getRating();
-        }
-        return sum / productFeedback.size();
+    public double getAverageRating(String productId) {
+        return getRatingSummary(productId).getAverage();
     }
-}
\ No newline at end of file
+}
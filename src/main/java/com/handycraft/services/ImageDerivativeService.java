@@ -0,0 +1,269 @@
+package com.handycraft.services;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resized copies of product images for the card grids. Derivatives are produced on first
+ * request (or at startup if handycraft.images.pregenerate is set) on a small bounded pool,
+ * and written to a disk cache named after the source's size and modification time, so an
+ * edited image gets new derivatives. A request only waits briefly for a missing derivative
+ * and is otherwise served the original while it is made. Older versions are deleted once a
+ * new one is written, and derivatives of removed images are pruned at startup.
+ */
+public class ImageDerivativeService {
+    private static final String CACHE_DIRECTORY = "src/main/resources/data/image_cache";
+    public static final Set<Integer> WIDTHS = Set.of(160, 320, 640);
+
+    private static final int WORKERS = Integer.getInteger("handycraft.images.workers", 2);
+    private static final int QUEUE_SIZE = 64;
+    // Small images resize within this; anything slower is served the original rather than holding a static thread
+    private static final long WAIT_MS = Long.getLong("handycraft.images.waitMs", 50);
+    private static final float JPEG_QUALITY = 0.82f;
+    // <source file name>-w<width>-<size>-<mtime>.<ext>, as derivativePath names them
+    private static final Pattern DERIVATIVE_NAME = Pattern.compile("(.+)-w(\\d+)-[0-9a-f]+-[0-9a-f]+\\.(jpg|png)");
+
+    private static ImageDerivativeService instance;
+
+    private final Path cacheDirectory = Paths.get(CACHE_DIRECTORY);
+    private final ThreadPoolExecutor workers;
+    // One job per derivative, so concurrent requests for the same image share the work
+    private final Map<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    private ImageDerivativeService() {
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(WORKERS, WORKERS, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+                    Thread t = new Thread(r, "image-derivatives-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        workers.allowCoreThreadTimeOut(true);
+        try {
+            Files.createDirectories(cacheDirectory);
+        } catch (IOException e) {
+            System.err.println("Could not create image cache directory: " + e.getMessage());
+        }
+    }
+
+    public static synchronized ImageDerivativeService getInstance() {
+        if (instance == null) {
+            instance = new ImageDerivativeService();
+        }
+        return instance;
+    }
+
+    /**
+     * Path of the source image resized to the given width, generating it if needed.
+     * Returns null when the original should be served instead: unsupported width,
+     * the pool is saturated, generation failed, or it is still running after WAIT_MS.
+     */
+    public Path getDerivative(Path source, int width) {
+        if (!WIDTHS.contains(width) || !Files.isRegularFile(source)) {
+            return null;
+        }
+        Path target;
+        try {
+            target = derivativePath(source, width);
+        } catch (IOException e) {
+            return null;
+        }
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+
+        CompletableFuture<Path> job = start(source, target, width);
+        try {
+            return job.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null; // keeps running; a later request will find it on disk
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println("Could not resize " + source.getFileName() + ": " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    // Queues every width of every image in the directory, e.g. the product images at startup
+    public void pregenerate(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            for (int width : WIDTHS) {
+                try {
+                    Path target = derivativePath(file.toPath(), width);
+                    if (file.isFile() && !Files.exists(target)) {
+                        start(file.toPath(), target, width);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Skipping " + file.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Deletes cached derivatives whose source image is gone or has changed since, in the background
+    public void pruneStale(Path directory) {
+        try {
+            workers.execute(() -> {
+                Set<String> current = new HashSet<>();
+                File[] files = directory.toFile().listFiles();
+                if (files == null) return;
+                for (File file : files) {
+                    if (!file.isFile()) continue;
+                    for (int width : WIDTHS) {
+                        try {
+                            current.add(derivativePath(file.toPath(), width).getFileName().toString());
+                        } catch (IOException e) {
+                            // Unreadable source: its derivatives count as stale
+                        }
+                    }
+                }
+                deleteDerivatives(null, -1, current);
+            });
+        } catch (RejectedExecutionException e) {
+            // Busy; the next start tries again
+        }
+    }
+
+    private CompletableFuture<Path> start(Path source, Path target, int width) {
+        CompletableFuture<Path> job = inFlight.computeIfAbsent(target, t -> submit(source, t, width));
+        // Forget the job once it's done (runs right away if it already is); the file on disk takes over
+        job.whenComplete((path, error) -> inFlight.remove(target, job));
+        return job;
+    }
+
+    private CompletableFuture<Path> submit(Path source, Path target, int width) {
+        CompletableFuture<Path> job = new CompletableFuture<>();
+        try {
+            workers.execute(() -> {
+                try {
+                    job.complete(generate(source, target, width));
+                } catch (Throwable e) {
+                    job.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Pool is full: serve the original this time rather than queueing without bound
+            job.complete(null);
+        }
+        return job;
+    }
+
+    private Path generate(Path source, Path target, int width) throws IOException {
+        BufferedImage original = ImageIO.read(source.toFile());
+        if (original == null) {
+            throw new IOException("unsupported image format");
+        }
+        // Never upscale; a narrow source is just re-encoded at its own size
+        int targetWidth = Math.min(width, original.getWidth());
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        if (target.getFileName().toString().endsWith(".jpg")) {
+            writeJpeg(resize(original, targetWidth, BufferedImage.TYPE_INT_RGB), tmp.toFile());
+        } else {
+            ImageIO.write(resize(original, targetWidth, BufferedImage.TYPE_INT_ARGB), "png", tmp.toFile());
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Earlier versions of this image at this width are never asked for again
+        deleteDerivatives(source.getFileName().toString(), width, Set.of(target.getFileName().toString()));
+        return target;
+    }
+
+    // Deletes derivatives of the given source file and width (any when null / -1) other than those to keep
+    private void deleteDerivatives(String sourceName, int width, Set<String> keep) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(cacheDirectory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                Matcher matcher = DERIVATIVE_NAME.matcher(name);
+                if (keep.contains(name) || !matcher.matches()) continue;
+                if (sourceName != null && !matcher.group(1).equals(sourceName)) continue;
+                if (width >= 0 && Integer.parseInt(matcher.group(2)) != width) continue;
+                Files.deleteIfExists(entry);
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Could not clean image cache: " + e.getMessage());
+        }
+    }
+
+    // Halves the image until it is within 2x of the target, then does one bicubic pass;
+    // a single big bilinear step would alias badly on photos
+    private static BufferedImage resize(BufferedImage source, int width, int type) {
+        int height = Math.max(1, (int) Math.round((double) source.getHeight() * width / source.getWidth()));
+
+        BufferedImage current = source;
+        while (current.getWidth() / 2 >= width) {
+            current = draw(current, current.getWidth() / 2, Math.max(1, current.getHeight() / 2), type,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        return draw(current, width, height, type, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int type, Object interpolation) {
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private static void writeJpeg(BufferedImage image, File file) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    // e.g. Bucket_hat.jpg-w320-1a2b3c-18f0e5a.jpg: source size and mtime make a new name when the source changes.
+    // The source's own extension stays in the name, so foo.jpg and foo.png never share derivatives.
+    // JPEG sources stay JPEG; anything else becomes PNG so transparency survives.
+    private Path derivativePath(Path source, int width) throws IOException {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String sourceExtension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        String extension = sourceExtension.equals("jpg") || sourceExtension.equals("jpeg") ? ".jpg" : ".png";
+        String version = Long.toHexString(Files.size(source)) + "-"
+                + Long.toHexString(Files.getLastModifiedTime(source).toMillis());
+        return cacheDirectory.resolve(name + "-w" + width + "-" + version + extension);
+    }
+}
@@ -0,0 +1,153 @@
+package com.handycraft.services;
+
+import com.handycraft.models.Product;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free stock counters keyed by product and variant. A reservation for a whole
+ * order either takes every line or none of them, using CAS on each counter and
+ * rolling back on the first shortage. Orders for different products never touch
+ * the same counter, so they don't contend.
+ */
+class InventoryEngine {
+
+    // One requested line of an order
+    static class Line {
+        final String productId;
+        final String variant;
+        final int quantity;
+        final String label;
+
+        Line(String productId, String variant, int quantity, String label) {
+            this.productId = productId;
+            this.variant = variant;
+            this.quantity = quantity;
+            this.label = label;
+        }
+    }
+
+    // Counters for one product. The product's own inventory map is a published copy for serialization.
+    private static class ProductStock {
+        final Product product;
+        final Map<String, AtomicInteger> variants = new LinkedHashMap<>();
+
+        ProductStock(Product product) {
+            this.product = product;
+        }
+    }
+
+    private final Map<String, ProductStock> stock = new ConcurrentHashMap<>();
+
+    // (Re)builds the counters for a product from its inventory map
+    void register(Product product) {
+        ProductStock productStock = new ProductStock(product);
+        Map<String, Integer> normalized = new LinkedHashMap<>();
+        if (product.getInventory() != null) {
+            // Inventories posted by the admin page come through Gson as doubles
+            Map<String, ?> inventory = product.getInventory();
+            for (Map.Entry<String, ?> entry : inventory.entrySet()) {
+                int quantity = entry.getValue() instanceof Number ? ((Number) entry.getValue()).intValue() : 0;
+                normalized.put(entry.getKey(), quantity);
+                productStock.variants.put(entry.getKey(), new AtomicInteger(quantity));
+            }
+        }
+        product.setInventory(normalized);
+        stock.put(product.getId(), productStock);
+    }
+
+    void remove(String productId) {
+        stock.remove(productId);
+    }
+
+    boolean isAvailable(String productId, String variant, int quantity) {
+        AtomicInteger counter = counterFor(productId, variant);
+        return counter != null && counter.get() >= quantity;
+    }
+
+    /**
+     * Takes stock for every line, or for none of them.
+     * Returns null on success, otherwise the first line that could not be satisfied.
+     */
+    Line reserve(List<Line> lines) {
+        // Merge repeated product/variant lines so each counter is touched once
+        Map<String, Line> merged = new LinkedHashMap<>();
+        for (Line line : lines) {
+            if (line.quantity < 0) return line;
+            merged.merge(line.productId + '\u0000' + line.variant, line,
+                    (a, b) -> new Line(a.productId, a.variant, a.quantity + b.quantity, a.label));
+        }
+
+        List<Line> taken = new ArrayList<>();
+        for (Line line : merged.values()) {
+            AtomicInteger counter = counterFor(line.productId, line.variant);
+            if (counter == null || !tryTake(counter, line.quantity)) {
+                giveBack(taken);
+                return line;
+            }
+            taken.add(line);
+        }
+
+        publish(taken);
+        return null;
+    }
+
+    // Returns stock taken by an earlier reserve, e.g. when the order could not be recorded
+    void release(List<Line> lines) {
+        giveBack(lines);
+    }
+
+    // Sum of the live counters, or -1 for a product that isn't registered
+    int totalStock(String productId) {
+        ProductStock productStock = stock.get(productId);
+        if (productStock == null) return -1;
+        int total = 0;
+        for (AtomicInteger counter : productStock.variants.values()) {
+            total += counter.get();
+        }
+        return total;
+    }
+
+    private boolean tryTake(AtomicInteger counter, int quantity) {
+        while (true) {
+            int current = counter.get();
+            if (current < quantity) return false;
+            if (counter.compareAndSet(current, current - quantity)) return true;
+        }
+    }
+
+    private void giveBack(List<Line> lines) {
+        for (Line line : lines) {
+            AtomicInteger counter = counterFor(line.productId, line.variant);
+            if (counter != null) {
+                counter.addAndGet(line.quantity);
+            }
+        }
+        publish(lines);
+    }
+
+    // Copies counter values into the products' inventory maps. Only existing keys are written,
+    // so readers iterating those maps never see a structural change.
+    private void publish(List<Line> lines) {
+        for (Line line : lines) {
+            ProductStock productStock = stock.get(line.productId);
+            if (productStock == null) continue;
+            synchronized (productStock) {
+                AtomicInteger counter = productStock.variants.get(line.variant);
+                if (counter != null) {
+                    productStock.product.getInventory().put(line.variant, counter.get());
+                }
+            }
+        }
+    }
+
+    private AtomicInteger counterFor(String productId, String variant) {
+        ProductStock productStock = stock.get(productId);
+        return productStock == null ? null : productStock.variants.get(variant);
+    }
+}
@@ -0,0 +1,394 @@
+package com.handycraft.services;
+
+import com.handycraft.models.Order;
+import com.handycraft.utils.OrderDates;
+import com.handycraft.utils.OrderItems;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Order history in columns for ad-hoc analytics. Each order is a row of primitive arrays
+ * (date, calendar day, status code, amount in cents), and each product in an order is a
+ * row in a second set of arrays pointing back at its order, with the product id
+ * dictionary-encoded to an int. Aggregations are plain loops over these arrays with no boxing, parsing or
+ * map lookups per row, so they stay fast into the millions of orders.
+ *
+ * Built from the order log through an OrderListener and appended to as orders arrive;
+ * status changes overwrite the order's status code in place. Only the order events
+ * write (one at a time, under the order lock); readers take a snapshot of the arrays
+ * and row counts and never block them.
+ */
+public class OrderAnalyticsStore implements OrderListener {
+    // Status code of an order that was dropped because it couldn't be saved
+    private static final byte DROPPED = 0;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static OrderAnalyticsStore instance;
+
+    public enum GroupBy { PRODUCT, STATUS, DAY, WEEK, MONTH }
+
+    public static class Row {
+        private final String key;
+        private final long orders;
+        private final long units;
+        private final double revenue;
+
+        Row(String key, long orders, long units, long revenueCents) {
+            this.key = key;
+            this.orders = orders;
+            this.units = units;
+            this.revenue = revenueCents / 100.0;
+        }
+
+        public String getKey() { return key; }
+        public long getOrders() { return orders; }
+        public long getUnits() { return units; }
+        public double getRevenue() { return revenue; }
+    }
+
+    public static class Result {
+        private final String groupBy;
+        private final int scannedOrders;
+        private final int scannedLines;
+        private long elapsedMicros;
+        private final List<Row> rows;
+
+        Result(GroupBy groupBy, int scannedOrders, int scannedLines, List<Row> rows) {
+            this.groupBy = groupBy.name().toLowerCase(Locale.ROOT);
+            this.scannedOrders = scannedOrders;
+            this.scannedLines = scannedLines;
+            this.rows = rows;
+        }
+
+        public List<Row> getRows() { return rows; }
+    }
+
+    // One consistent view of the columns; arrays are only replaced when they grow
+    private static class Columns {
+        final long[] dateMillis;
+        final int[] epochDay;
+        final byte[] status;
+        final long[] amountCents;
+        final int[] lineOrder;
+        final int[] lineProduct;
+        final int[] lineUnits;
+        final long[] lineCents;
+
+        Columns(int orders, int lines) {
+            this(new long[orders], new int[orders], new byte[orders], new long[orders],
+                    new int[lines], new int[lines], new int[lines], new long[lines]);
+        }
+
+        Columns(long[] dateMillis, int[] epochDay, byte[] status, long[] amountCents,
+                int[] lineOrder, int[] lineProduct, int[] lineUnits, long[] lineCents) {
+            this.dateMillis = dateMillis;
+            this.epochDay = epochDay;
+            this.status = status;
+            this.amountCents = amountCents;
+            this.lineOrder = lineOrder;
+            this.lineProduct = lineProduct;
+            this.lineUnits = lineUnits;
+            this.lineCents = lineCents;
+        }
+
+        Columns withOrderCapacity(int capacity) {
+            return new Columns(Arrays.copyOf(dateMillis, capacity), Arrays.copyOf(epochDay, capacity),
+                    Arrays.copyOf(status, capacity), Arrays.copyOf(amountCents, capacity),
+                    lineOrder, lineProduct, lineUnits, lineCents);
+        }
+
+        Columns withLineCapacity(int capacity) {
+            return new Columns(dateMillis, epochDay, status, amountCents,
+                    Arrays.copyOf(lineOrder, capacity), Arrays.copyOf(lineProduct, capacity),
+                    Arrays.copyOf(lineUnits, capacity), Arrays.copyOf(lineCents, capacity));
+        }
+    }
+
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY, INITIAL_CAPACITY * 2);
+    // Rows visible to readers; written after the row's columns, so a reader never sees a half-written row
+    private volatile int orderCount;
+    private volatile int lineCount;
+
+    // Writer-side dictionaries. Readers get a copy of the decode tables with their snapshot.
+    private final Map<String, Integer> rowByOrderId = new HashMap<>();
+    private final Map<String, Integer> productCodes = new HashMap<>();
+    private volatile String[] productIds = new String[0];
+    private final Map<String, Byte> statusCodes = new HashMap<>();
+    private volatile String[] statusNames = {"Dropped"};
+
+    private OrderAnalyticsStore() {}
+
+    public static synchronized OrderAnalyticsStore getInstance() {
+        if (instance == null) {
+            instance = new OrderAnalyticsStore();
+            OrderService.getInstance().addOrderListener(instance);
+        }
+        return instance;
+    }
+
+    @Override
+    public void orderChanged(Order order, String oldStatus, String newStatus) {
+        if (order.getOrderId() == null) return;
+        Integer row = rowByOrderId.get(order.getOrderId());
+        if (row == null) {
+            if (newStatus != null) append(order, newStatus);
+            return;
+        }
+        if (newStatus == null) {
+            // Forget the id too: a later order may be saved under the same id and needs its own row
+            rowByOrderId.remove(order.getOrderId());
+            columns.status[row] = DROPPED;
+        } else {
+            columns.status[row] = statusCode(newStatus);
+        }
+        // Re-publish the row count so readers see the new status along with everything before it
+        orderCount = orderCount;
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    /**
+     * Orders grouped by product, status, day, ISO week or month. from and to (inclusive)
+     * limit by calendar day and statuses, if non-empty, limits by status (case-insensitive);
+     * either may be null. Dropped orders never count.
+     */
+    public Result aggregate(GroupBy groupBy, LocalDate from, LocalDate to, List<String> statuses) {
+        long start = System.nanoTime();
+        Result result = scan(groupBy, from, to, statuses);
+        result.elapsedMicros = (System.nanoTime() - start) / 1000;
+        return result;
+    }
+
+    private Result scan(GroupBy groupBy, LocalDate from, LocalDate to, List<String> statuses) {
+        int orders = orderCount;
+        int lines = lineCount;
+        Columns c = columns;
+        int minDay = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+        int maxDay = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+        int[] statusFilter = statusFilter(statuses);
+        // Lines are appended before their order is published, so drop any that belong to unpublished orders
+        while (lines > 0 && c.lineOrder[lines - 1] >= orders) {
+            lines--;
+        }
+
+        // 1 for each order that passes the filters, else 0. The loops below multiply by it
+        // instead of branching, since whether a row is selected is close to random.
+        int[] selected = new int[orders];
+        for (int i = 0; i < orders; i++) {
+            int day = c.epochDay[i];
+            selected[i] = statusFilter[c.status[i]] & (day >= minDay ? 1 : 0) & (day <= maxDay ? 1 : 0);
+        }
+
+        switch (groupBy) {
+            case PRODUCT:
+                return byProduct(c, selected, lines, orders);
+            case STATUS:
+                return byStatus(c, selected, lines, orders);
+            default:
+                return byPeriod(groupBy, c, selected, lines, orders);
+        }
+    }
+
+    private Result byProduct(Columns c, int[] selected, int lines, int orders) {
+        String[] products = productIds;
+        long[] count = new long[products.length];
+        long[] units = new long[products.length];
+        long[] cents = new long[products.length];
+        for (int i = 0; i < lines; i++) {
+            int product = c.lineProduct[i];
+            int m = selected[c.lineOrder[i]];
+            count[product] += m;
+            units[product] += m * c.lineUnits[i];
+            cents[product] += m * c.lineCents[i];
+        }
+        List<Row> rows = new ArrayList<>();
+        for (int p = 0; p < products.length; p++) {
+            if (count[p] > 0) rows.add(new Row(products[p], count[p], units[p], cents[p]));
+        }
+        rows.sort((a, b) -> Double.compare(b.revenue, a.revenue));
+        return new Result(GroupBy.PRODUCT, orders, lines, rows);
+    }
+
+    private Result byStatus(Columns c, int[] selected, int lines, int orders) {
+        // Indexed by the status captured per order, since a status may change while we scan
+        byte[] status = Arrays.copyOf(c.status, orders);
+        long[] count = new long[Byte.MAX_VALUE + 1];
+        long[] units = new long[Byte.MAX_VALUE + 1];
+        long[] cents = new long[Byte.MAX_VALUE + 1];
+        for (int i = 0; i < orders; i++) {
+            int m = selected[i];
+            count[status[i]] += m;
+            cents[status[i]] += m * c.amountCents[i];
+        }
+        for (int i = 0; i < lines; i++) {
+            int order = c.lineOrder[i];
+            units[status[order]] += selected[order] * c.lineUnits[i];
+        }
+        String[] names = statusNames;
+        List<Row> rows = new ArrayList<>();
+        for (int s = 0; s < names.length; s++) {
+            if (count[s] > 0) rows.add(new Row(names[s], count[s], units[s], cents[s]));
+        }
+        return new Result(GroupBy.STATUS, orders, lines, rows);
+    }
+
+    // Sums per calendar day into arrays spanning the selected days, then folds days into weeks or months
+    private Result byPeriod(GroupBy groupBy, Columns c, int[] selected, int lines, int orders) {
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int i = 0; i < orders; i++) {
+            int day = c.epochDay[i];
+            first = Math.min(first, selected[i] == 1 ? day : Integer.MAX_VALUE);
+            last = Math.max(last, selected[i] == 1 ? day : Integer.MIN_VALUE);
+        }
+        if (first > last) {
+            return new Result(groupBy, orders, lines, new ArrayList<>());
+        }
+
+        // Unselected rows land in slot 0 with a weight of 0
+        int span = last - first + 1;
+        int[] slot = new int[orders];
+        long[] count = new long[span];
+        long[] units = new long[span];
+        long[] cents = new long[span];
+        for (int i = 0; i < orders; i++) {
+            int m = selected[i];
+            slot[i] = (c.epochDay[i] - first) * m;
+            count[slot[i]] += m;
+            cents[slot[i]] += m * c.amountCents[i];
+        }
+        for (int i = 0; i < lines; i++) {
+            int order = c.lineOrder[i];
+            units[slot[order]] += selected[order] * c.lineUnits[i];
+        }
+
+        Map<String, long[]> periods = new LinkedHashMap<>();
+        for (int d = 0; d < span; d++) {
+            if (count[d] == 0) continue;
+            long[] totals = periods.computeIfAbsent(label(LocalDate.ofEpochDay(first + d), groupBy), k -> new long[3]);
+            totals[0] += count[d];
+            totals[1] += units[d];
+            totals[2] += cents[d];
+        }
+        List<Row> rows = new ArrayList<>();
+        periods.forEach((period, totals) -> rows.add(new Row(period, totals[0], totals[1], totals[2])));
+        return new Result(groupBy, orders, lines, rows);
+    }
+
+    private static String label(LocalDate day, GroupBy groupBy) {
+        switch (groupBy) {
+            case WEEK:
+                return String.format("%d-W%02d",
+                        day.get(IsoFields.WEEK_BASED_YEAR), day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case MONTH:
+                return YearMonth.from(day).toString();
+            default:
+                return day.toString();
+        }
+    }
+
+    // 1 per status code to include, 0 otherwise; dropped orders are always left out
+    private int[] statusFilter(List<String> statuses) {
+        int[] filter = new int[Byte.MAX_VALUE + 1];
+        if (statuses == null || statuses.isEmpty()) {
+            Arrays.fill(filter, 1);
+        } else {
+            String[] names = statusNames;
+            for (int s = 1; s < names.length; s++) {
+                filter[s] = statuses.stream().anyMatch(names[s]::equalsIgnoreCase) ? 1 : 0;
+            }
+        }
+        filter[DROPPED] = 0;
+        return filter;
+    }
+
+    private void append(Order order, String status) {
+        ZonedDateTime date = OrderDates.parse(order.getOrderDate());
+        if (date == null) {
+            System.err.println("Analytics store skipping " + order.getOrderId() + ": unreadable date " + order.getOrderDate());
+            return;
+        }
+        int row = orderCount;
+        Columns c = columns;
+        if (row == c.dateMillis.length) {
+            c = c.withOrderCapacity(row * 2);
+        }
+        c.dateMillis[row] = date.toInstant().toEpochMilli();
+        c.epochDay[row] = (int) date.toLocalDate().toEpochDay();
+        c.status[row] = statusCode(status);
+        c.amountCents[row] = Math.round(order.getTotalAmount() * 100);
+
+        // One line per product in the order, so counting lines per product counts orders
+        int line = lineCount;
+        if (order.getItems() != null) {
+            Map<Integer, Integer> lineByProduct = new HashMap<>();
+            for (Map<String, Object> item : order.getItems()) {
+                String productId = OrderItems.productId(item);
+                if (productId == null) continue;
+                int product = productCode(productId);
+                int units = OrderItems.quantity(item);
+                long cents = Math.round(OrderItems.price(item) * units * 100);
+                Integer existing = lineByProduct.get(product);
+                if (existing != null) {
+                    c.lineUnits[existing] += units;
+                    c.lineCents[existing] += cents;
+                    continue;
+                }
+                if (line == c.lineOrder.length) {
+                    c = c.withLineCapacity(line * 2);
+                }
+                c.lineOrder[line] = row;
+                c.lineProduct[line] = product;
+                c.lineUnits[line] = units;
+                c.lineCents[line] = cents;
+                lineByProduct.put(product, line);
+                line++;
+            }
+        }
+
+        columns = c;
+        rowByOrderId.put(order.getOrderId(), row);
+        lineCount = line;
+        orderCount = row + 1;
+    }
+
+    private int productCode(String productId) {
+        Integer code = productCodes.get(productId);
+        if (code == null) {
+            code = productCodes.size();
+            productCodes.put(productId, code);
+            String[] ids = Arrays.copyOf(productIds, code + 1);
+            ids[code] = productId;
+            productIds = ids;
+        }
+        return code;
+    }
+
+    private byte statusCode(String status) {
+        String key = status.toLowerCase(Locale.ROOT);
+        Byte code = statusCodes.get(key);
+        if (code == null) {
+            if (statusNames.length > Byte.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct order statuses");
+            }
+            code = (byte) statusNames.length;
+            statusCodes.put(key, code);
+            String[] names = Arrays.copyOf(statusNames, code + 1);
+            names[code] = status;
+            statusNames = names;
+        }
+        return code;
+    }
+}
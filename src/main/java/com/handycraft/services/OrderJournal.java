@@ -0,0 +1,183 @@
+package com.handycraft.services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.handycraft.models.Order;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only segment log for orders. Each line is one compact JSON record,
+ * either a new order or a status change. Segments are numbered; the active
+ * one is sealed before a snapshot is taken so that everything up to the
+ * sealed segment can be deleted once the snapshot is on disk.
+ * Not thread safe - callers hold OrderService's lock.
+ */
+class OrderJournal {
+    static final String OP_ORDER = "order";
+    static final String OP_STATUS = "status";
+
+    private static final String SEGMENT_PREFIX = "orders-journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // One line of the journal
+    static class Record {
+        String op;
+        Order order;
+        String orderId;
+        String status;
+    }
+
+    private final File dataDir;
+    private final boolean fsync;
+    private final Gson gson = new Gson();
+
+    private FileOutputStream activeStream;
+    private BufferedWriter activeWriter;
+    private long activeSegment;
+    private int activeRecords;
+    // Segments before the active one that no snapshot covers yet: replayed at startup, or sealed by a failed compaction
+    private boolean sealedSegments;
+
+    OrderJournal(File dataDir, boolean fsync) {
+        this.dataDir = dataDir;
+        this.fsync = fsync;
+    }
+
+    // Replays every existing segment, oldest first. A torn last line (crash mid-append) is skipped.
+    void replay(Consumer<Record> consumer) {
+        for (long segment : listSegments()) {
+            File file = segmentFile(segment);
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    try {
+                        Record record = gson.fromJson(line, Record.class);
+                        if (record != null && record.op != null) {
+                            consumer.accept(record);
+                        }
+                    } catch (JsonParseException e) {
+                        System.err.println("Skipping corrupt journal record in " + file.getName() + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading order journal " + file.getName() + ": " + e.getMessage());
+            }
+            activeSegment = Math.max(activeSegment, segment);
+            sealedSegments = true;
+        }
+    }
+
+    // Starts a fresh segment after replay so a possibly torn tail is never appended to
+    void open() throws IOException {
+        openSegment(activeSegment + 1);
+    }
+
+    void appendOrder(Order order) throws IOException {
+        Record record = new Record();
+        record.op = OP_ORDER;
+        record.order = order;
+        append(record);
+    }
+
+    void appendStatus(String orderId, String status) throws IOException {
+        Record record = new Record();
+        record.op = OP_STATUS;
+        record.orderId = orderId;
+        record.status = status;
+        append(record);
+    }
+
+    int getActiveRecords() {
+        return activeRecords;
+    }
+
+    boolean hasSealedSegments() {
+        return sealedSegments;
+    }
+
+    // Closes the active segment and opens the next one. Returns the number of the sealed segment.
+    long seal() throws IOException {
+        long sealed = activeSegment;
+        closeActive();
+        openSegment(sealed + 1);
+        sealedSegments = true;
+        return sealed;
+    }
+
+    // Removes segments already covered by a snapshot
+    void deleteSegmentsUpTo(long segment) {
+        for (long existing : listSegments()) {
+            if (existing <= segment && !segmentFile(existing).delete()) {
+                System.err.println("Could not delete compacted journal segment " + existing);
+            }
+        }
+        sealedSegments = false;
+    }
+
+    void close() throws IOException {
+        closeActive();
+    }
+
+    private void append(Record record) throws IOException {
+        activeWriter.write(gson.toJson(record));
+        activeWriter.write('\n');
+        activeWriter.flush();
+        if (fsync) {
+            activeStream.getChannel().force(false);
+        }
+        activeRecords++;
+    }
+
+    private void openSegment(long segment) throws IOException {
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
+        }
+        activeStream = new FileOutputStream(segmentFile(segment), true);
+        activeWriter = new BufferedWriter(new OutputStreamWriter(activeStream, StandardCharsets.UTF_8));
+        activeSegment = segment;
+        activeRecords = 0;
+    }
+
+    private void closeActive() throws IOException {
+        if (activeWriter != null) {
+            activeWriter.close();
+            activeWriter = null;
+            activeStream = null;
+        }
+    }
+
+    private File segmentFile(long segment) {
+        return new File(dataDir, SEGMENT_PREFIX + String.format("%08d", segment) + SEGMENT_SUFFIX);
+    }
+
+    private List<Long> listSegments() {
+        List<Long> segments = new ArrayList<>();
+        File[] files = dataDir.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) return segments;
+
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring unexpected journal file: " + name);
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+}
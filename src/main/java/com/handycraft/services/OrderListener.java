@@ -0,0 +1,15 @@
+package com.handycraft.services;
+
+import com.handycraft.models.Order;
+
+/**
+ * Told about every order OrderService records and every status change, in order and
+ * one at a time (calls are made under the order lock, so keep them quick).
+ */
+public interface OrderListener {
+    /**
+     * oldStatus is null for a newly recorded order, newStatus is null for an order that
+     * was dropped because it couldn't be saved.
+     */
+    void orderChanged(Order order, String oldStatus, String newStatus);
+}
@@ -6,22 +6,53 @@ import com.google.gson.reflect.TypeToken;
 import com.handycraft.models.Order;
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class OrderService {
-    private static final String ORDER_DATA_FILE = "src/main/resources/data/orders.json";
+    private static final String DATA_DIR = "src/main/resources/data";
+    private static final String ORDER_DATA_FILE = DATA_DIR + "/orders.json";
+
+    // "journal" (default) appends each change to a segment log, "snapshot" rewrites orders.json every time
+    private static final boolean JOURNAL_MODE =
+            !"snapshot".equalsIgnoreCase(System.getProperty("handycraft.orders.persistence", "journal"));
+    private static final long COMPACT_INTERVAL_SECONDS = Long.getLong("handycraft.orders.compactIntervalSeconds", 60);
+    // Off by default: appends reach the OS but not the disk, so a power failure (not a crash) can lose acknowledged orders
+    private static final boolean JOURNAL_FSYNC = Boolean.getBoolean("handycraft.orders.fsync");
+
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
     private final List<Order> orders;
+    private final Map<String, Order> ordersById = new HashMap<>();
+    // Order history per user, read without the lock
+    private final Map<String, List<Order>> ordersByUserId = new ConcurrentHashMap<>();
+    // (userId, productId) -> number of Completed orders containing that product, for review eligibility
+    private final Map<String, Integer> completedPurchases = new ConcurrentHashMap<>();
     private final ReentrantLock fileLock = new ReentrantLock();
+    private OrderJournal journal;
 
     // Add ProductService dependency so we can update stock
     private final ProductService productService = ProductService.getInstance();
+    private final StatsRegistry stats = StatsRegistry.getInstance();
+    private final List<OrderListener> listeners = new CopyOnWriteArrayList<>();
 
     private static OrderService instance;
 
     private OrderService() {
         this.orders = loadOrdersFromFile();
+        for (Order order : orders) {
+            indexOrder(order);
+        }
+
+        if (JOURNAL_MODE) {
+            openJournal();
+        }
     }
 
     public static synchronized OrderService getInstance() {
@@ -43,61 +74,230 @@ public class OrderService {
         }
     }
 
-    public void saveOrder(Order newOrder) throws IOException {
+    // Rebuilds state from the snapshot plus the journal tail, then schedules background compaction
+    private void openJournal() {
+        journal = new OrderJournal(new File(DATA_DIR), JOURNAL_FSYNC);
+        journal.replay(this::applyJournalRecord);
+        try {
+            journal.open();
+        } catch (IOException e) {
+            System.err.println("Could not open order journal, falling back to snapshot writes: " + e.getMessage());
+            journal = null;
+            return;
+        }
+
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        compactor.scheduleWithFixedDelay(this::compactJournal,
+                COMPACT_INTERVAL_SECONDS, COMPACT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void applyJournalRecord(OrderJournal.Record record) {
+        if (OrderJournal.OP_ORDER.equals(record.op) && record.order != null) {
+            // Records may already be in the snapshot if a compaction was interrupted
+            if (!ordersById.containsKey(record.order.getOrderId())) {
+                orders.add(record.order);
+                indexOrder(record.order);
+            }
+        } else if (OrderJournal.OP_STATUS.equals(record.op)) {
+            Order order = ordersById.get(record.orderId);
+            if (order != null) {
+                changeStatus(order, record.status);
+            }
+        }
+    }
+
+    // Folds the journal into a fresh orders.json snapshot. Only sealing the segment happens under the lock.
+    private void compactJournal() {
+        List<Order> snapshot;
+        long sealedSegment;
         fileLock.lock();
         try {
-            // Validation loop
-            if (newOrder.getItems() != null) {
-                for (Map<String, Object> item : newOrder.getItems()) {
-                    String productId = String.valueOf(item.get("id"));
+            // Nothing new since the last snapshot, and nothing left over from startup or a failed run
+            if (journal.getActiveRecords() == 0 && !journal.hasSealedSegments()) return;
+            sealedSegment = journal.seal();
+            snapshot = new ArrayList<>(orders);
+        } catch (IOException e) {
+            System.err.println("Error sealing order journal: " + e.getMessage());
+            return;
+        } finally {
+            fileLock.unlock();
+        }
 
-                    // Get the variant from the item map
-                    String variant = (String) item.getOrDefault("variant", "Default");
+        try {
+            writeSnapshot(snapshot);
+            journal.deleteSegmentsUpTo(sealedSegment);
+        } catch (IOException e) {
+            System.err.println("Error compacting order journal: " + e.getMessage());
+        }
+    }
 
-                    Object qtyObj = item.get("quantity");
-                    int quantityRequested = (qtyObj instanceof Number) ? ((Number) qtyObj).intValue() : 0;
+    private void writeSnapshot(List<Order> snapshot) throws IOException {
+        File target = new File(ORDER_DATA_FILE);
+        File temp = new File(ORDER_DATA_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), java.nio.charset.StandardCharsets.UTF_8)) {
+            gson.toJson(snapshot, writer);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
-                    // Pass the specific variant to the stock check
-                    if (!productService.isStockAvailable(productId, variant, quantityRequested)) {
-                        throw new IOException("Insufficient stock for " + item.get("name") + " (" + variant + ")");
-                    }
-                }
+    public void saveOrder(Order newOrder) throws IOException {
+        // All-or-nothing stock reservation. It is lock-free, so checkouts for different products run in parallel.
+        if (newOrder.getItems() != null) {
+            productService.reserveStock(newOrder.getItems());
+        }
+
+        fileLock.lock();
+        try {
+            // Save order. Orders now commit concurrently, so keep IDs unique within the same millisecond.
+            long stamp = System.currentTimeMillis();
+            while (ordersById.containsKey("ORD-" + stamp)) stamp++;
+            newOrder.setOrderId("ORD-" + stamp);
+            newOrder.setOrderDate(new java.util.Date().toString());
+            newOrder.setStatus("Pending");
+            if (journal != null) {
+                journal.appendOrder(newOrder);
+            }
+            this.orders.add(newOrder);
+            indexOrder(newOrder);
+            if (journal == null) {
+                saveOrdersToFile();
             }
 
-            // Reduction loop
+        } catch (IOException e) {
+            // The order was not recorded, so give the stock back
+            if (this.ordersById.get(newOrder.getOrderId()) == newOrder) {
+                this.orders.remove(newOrder);
+                unindexOrder(newOrder);
+            }
             if (newOrder.getItems() != null) {
-                for (Map<String, Object> item : newOrder.getItems()) {
-                    String productId = String.valueOf(item.get("id"));
-                    String variant = (String) item.getOrDefault("variant", "Default");
-                    int quantityToReduce = ((Number) item.get("quantity")).intValue();
-
-                    // Reduce the specific variant stock
-                    productService.reduceStock(productId, variant, quantityToReduce);
+                try {
+                    productService.releaseStock(newOrder.getItems());
+                } catch (IOException releaseError) {
+                    // The stock is back in memory; only saving it failed. Report the original error.
+                    e.addSuppressed(releaseError);
                 }
             }
+            throw e;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+    // Called with the lock held (or during startup)
+    private void indexOrder(Order order) {
+        ordersById.put(order.getOrderId(), order);
+        stats.orderAdded(order.getStatus());
+        fireOrderChanged(order, null, order.getStatus());
+        if (order.getUserId() != null) {
+            ordersByUserId.computeIfAbsent(order.getUserId(), id -> new CopyOnWriteArrayList<>()).add(order);
+        }
+        if (isCompleted(order.getStatus())) {
+            countPurchases(order, 1);
+        }
+    }
 
-            // Save order
-            newOrder.setOrderId("ORD-" + System.currentTimeMillis());
-            newOrder.setOrderDate(new java.util.Date().toString());
-            newOrder.setStatus("Pending");
-            this.orders.add(newOrder);
-            saveOrdersToFile();
+    private void unindexOrder(Order order) {
+        ordersById.remove(order.getOrderId());
+        stats.orderRemoved(order.getStatus());
+        fireOrderChanged(order, order.getStatus(), null);
+        if (order.getUserId() != null) {
+            List<Order> userOrders = ordersByUserId.get(order.getUserId());
+            if (userOrders != null) {
+                userOrders.remove(order);
+            }
+        }
+        if (isCompleted(order.getStatus())) {
+            countPurchases(order, -1);
+        }
+    }
+
+    // Keeps the purchase index and dashboard counters in step when an order moves into or out of Completed
+    private void changeStatus(Order order, String newStatus) {
+        boolean wasCompleted = isCompleted(order.getStatus());
+        String oldStatus = order.getStatus();
+        stats.orderStatusChanged(oldStatus, newStatus);
+        order.setStatus(newStatus);
+        fireOrderChanged(order, oldStatus, newStatus);
+        boolean nowCompleted = isCompleted(newStatus);
+        if (wasCompleted != nowCompleted) {
+            countPurchases(order, nowCompleted ? 1 : -1);
+        }
+    }
 
+    /**
+     * Registers a listener for order changes. It is first handed every order already
+     * recorded, as if each were new, so it can build its state without missing any.
+     */
+    public void addOrderListener(OrderListener listener) {
+        fileLock.lock();
+        try {
+            for (Order order : orders) {
+                listener.orderChanged(order, null, order.getStatus());
+            }
+            listeners.add(listener);
         } finally {
             fileLock.unlock();
         }
     }
+
+    private void fireOrderChanged(Order order, String oldStatus, String newStatus) {
+        for (OrderListener listener : listeners) {
+            try {
+                listener.orderChanged(order, oldStatus, newStatus);
+            } catch (RuntimeException e) {
+                System.err.println("Order listener failed for " + order.getOrderId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isCompleted(String status) {
+        return "Completed".equalsIgnoreCase(status);
+    }
+
+    private void countPurchases(Order order, int delta) {
+        if (order.getUserId() == null) return;
+        for (String productId : new HashSet<>(order.getPurchaseProductIds())) {
+            completedPurchases.merge(purchaseKey(order.getUserId(), productId), delta,
+                    (count, d) -> count + d > 0 ? count + d : null);
+        }
+    }
+
+    private static String purchaseKey(String userId, String productId) {
+        return userId + '\u0000' + productId;
+    }
+
+    // True if the user has at least one Completed order containing the product
+    public boolean hasCompletedPurchase(String userId, String productId) {
+        if (userId == null || productId == null) return false;
+        return completedPurchases.containsKey(purchaseKey(userId, productId));
+    }
+
     public boolean updateOrderStatus(String orderId, String newStatus) {
         fileLock.lock();
         try {
-            for (Order order : orders) {
-                if (order.getOrderId().equals(orderId)) {
-                    order.setStatus(newStatus);
+            Order order = ordersById.get(orderId);
+            if (order == null) {
+                return false;
+            }
+            // The per-user index holds this same object, so it sees the new status too
+            if (journal != null) {
+                // Journal first, so counters and listeners never see a status a restart would lose
+                journal.appendStatus(orderId, newStatus);
+                changeStatus(order, newStatus);
+            } else {
+                String oldStatus = order.getStatus();
+                changeStatus(order, newStatus);
+                try {
                     saveOrdersToFile(); // This writes the change back to orders.json
-                    return true;
+                } catch (IOException e) {
+                    changeStatus(order, oldStatus);
+                    throw e;
                 }
             }
-            return false;
+            return true;
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
             return false;
@@ -116,29 +316,10 @@ public class OrderService {
         return Collections.unmodifiableList(this.orders);
     }
 
+    // O(orders of this user), no disk I/O
     public List<Order> getOrdersByUserId(String userId) {
-        File dataFile = new File(ORDER_DATA_FILE);
-
-        if (!dataFile.exists() || dataFile.length() == 0) {
-            return new ArrayList<>();
-        }
-
-        try (FileReader reader = new FileReader(dataFile)) {
-            Type listType = new TypeToken<ArrayList<Order>>() {}.getType();
-            List<Order> allOrders = gson.fromJson(reader, listType);
-
-            if (allOrders == null) {
-                return new ArrayList<>();
-            }
-
-            return allOrders.stream()
-                    .filter(order -> userId.equals(order.getUserId()))
-                    .toList();
-
-        } catch (IOException e) {
-            System.err.println("Error reading orders file: " + e.getMessage());
-            return new ArrayList<>();
-        }
+        List<Order> userOrders = userId == null ? null : ordersByUserId.get(userId);
+        return userOrders == null ? new ArrayList<>() : new ArrayList<>(userOrders);
     }
 
 }
\ No newline at end of file
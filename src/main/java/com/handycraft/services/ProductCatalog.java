@@ -0,0 +1,128 @@
+package com.handycraft.services;
+
+import com.handycraft.models.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Indexed product catalog: id -> product, category -> products and the highest numeric id.
+ * Mutations must be serialized by the caller (ProductService holds its lock); lookups are
+ * lock-free and the ordered list is only rebuilt the next time someone asks for it.
+ */
+class ProductCatalog {
+
+    // Numeric ids sort by value, anything else after them by text
+    static final Comparator<String> ID_ORDER = (a, b) -> {
+        int x = parseId(a);
+        int y = parseId(b);
+        if (x != y) return Integer.compare(x, y);
+        return a.compareTo(b);
+    };
+
+    // Id order, which is also the order of products.json since new ids are always max + 1
+    private final Map<String, Product> ordered = new ConcurrentSkipListMap<>(ID_ORDER);
+    private final Map<String, Product> byId = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Product>> byCategory = new ConcurrentHashMap<>();
+    private int maxId;
+    private volatile List<Product> listView;
+
+    ProductCatalog(List<Product> products) {
+        for (Product p : products) {
+            put(p);
+        }
+    }
+
+    Product get(String productId) {
+        return productId == null ? null : byId.get(productId);
+    }
+
+    // Products of one category in id order
+    List<Product> getByCategory(String category) {
+        Map<String, Product> products = byCategory.get(category);
+        return products == null ? Collections.emptyList() : new ArrayList<>(products.values());
+    }
+
+    List<Product> list() {
+        List<Product> view = listView;
+        if (view != null) return view;
+        synchronized (this) {
+            if (listView == null) {
+                listView = Collections.unmodifiableList(new ArrayList<>(ordered.values()));
+            }
+            return listView;
+        }
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    int nextId() {
+        return maxId + 1;
+    }
+
+    void add(Product product) {
+        put(product);
+        invalidateList();
+    }
+
+    // Replaces an existing product in place. Returns false if the id is unknown.
+    boolean replace(Product product) {
+        Product old = byId.get(product.getId());
+        if (old == null) return false;
+        unindexCategory(old);
+        put(product);
+        invalidateList();
+        return true;
+    }
+
+    Product remove(String productId) {
+        Product old = byId.remove(productId);
+        if (old == null) return null;
+        ordered.remove(productId);
+        unindexCategory(old);
+        invalidateList();
+        return old;
+    }
+
+    private void put(Product product) {
+        ordered.put(product.getId(), product);
+        byId.put(product.getId(), product);
+        byCategory.computeIfAbsent(categoryKey(product), c -> new ConcurrentSkipListMap<>(ID_ORDER))
+                .put(product.getId(), product);
+        maxId = Math.max(maxId, parseId(product.getId()));
+    }
+
+    private void unindexCategory(Product product) {
+        Map<String, Product> products = byCategory.get(categoryKey(product));
+        if (products != null) {
+            products.remove(product.getId());
+            if (products.isEmpty()) {
+                byCategory.remove(categoryKey(product));
+            }
+        }
+    }
+
+    // Runs after the maps are updated, so a rebuild racing with a change is thrown away
+    private synchronized void invalidateList() {
+        listView = null;
+    }
+
+    private static String categoryKey(Product product) {
+        return product.getCategory() == null ? "" : product.getCategory();
+    }
+
+    private static int parseId(String id) {
+        try {
+            return Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+package com.handycraft.services;
+
+import com.handycraft.models.Product;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Query index over the catalog. Every product gets a slot; categories and stock status are
+ * bitsets over the slots and the id, price and name orders are sorted slot arrays. Each
+ * category also keeps its product and in-stock counts and its prices, so most facets are
+ * read straight off the index.
+ *
+ * A query walks only the smallest filter's postings (a category, a price range or the
+ * in-stock set), testing the other filters per product and keeping the best page with a
+ * bounded heap. When the filters match most of the catalog it walks the requested order from
+ * the cursor instead, which then finds a page almost at once. Nothing catalog-sized is
+ * copied per query.
+ *
+ * Products are added, replaced and removed in place and stock changes flip single bits, so
+ * edits never rebuild the index. A read-write lock keeps queries consistent with edits.
+ */
+class ProductQueryIndex {
+
+    static final String SORT_ID = "id";
+    static final String SORT_PRICE_ASC = "price_asc";
+    static final String SORT_PRICE_DESC = "price_desc";
+    static final String SORT_NAME = "name";
+
+    private static final Comparator<Product> BY_ID = (a, b) -> ProductCatalog.ID_ORDER.compare(a.getId(), b.getId());
+    private static final Comparator<Product> BY_PRICE =
+            Comparator.comparingDouble(Product::getPrice).thenComparing(BY_ID);
+    private static final Comparator<Product> BY_NAME =
+            Comparator.comparing((Product p) -> nameKey(p)).thenComparing(BY_ID);
+
+    // Above this share of the catalog a filter is cheaper to check while walking the order
+    private static final int DENSE_DIVISOR = 4;
+
+    // One category's postings, counts and prices (value -> number of products at that price)
+    private static class Category {
+        final int id;
+        final String slug;
+        String name;
+        final BitSet members = new BitSet();
+        int count;
+        int stockedCount;
+        final TreeMap<Double, Integer> prices = new TreeMap<>();
+        final TreeMap<Double, Integer> stockedPrices = new TreeMap<>();
+
+        Category(int id, String slug) {
+            this.id = id;
+            this.slug = slug;
+        }
+    }
+
+    // Slots sorted by the comparator, kept sorted as products come and go
+    private class Ordering {
+        final Comparator<Product> comparator;
+        int[] positions = new int[16];
+        int size;
+
+        Ordering(Comparator<Product> comparator) {
+            this.comparator = comparator;
+        }
+
+        void insert(int pos) {
+            int at = firstAfter(products[pos]);
+            if (size == positions.length) positions = Arrays.copyOf(positions, size * 2);
+            System.arraycopy(positions, at, positions, at + 1, size - at);
+            positions[at] = pos;
+            size++;
+        }
+
+        // Must run while the slot still holds the product it was inserted with
+        void remove(int pos) {
+            Product product = products[pos];
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (comparator.compare(products[positions[mid]], product) < 0) lo = mid + 1; else hi = mid;
+            }
+            if (lo < size && positions[lo] == pos) {
+                System.arraycopy(positions, lo + 1, positions, lo, size - lo - 1);
+                size--;
+            }
+        }
+
+        // First index whose product sorts after the given one
+        int firstAfter(Product product) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (comparator.compare(products[positions[mid]], product) <= 0) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        void sortAll(int[] slots, int count) {
+            Integer[] boxed = new Integer[count];
+            for (int i = 0; i < count; i++) boxed[i] = slots[i];
+            Arrays.sort(boxed, (x, y) -> comparator.compare(products[x], products[y]));
+            positions = new int[Math.max(16, count)];
+            for (int i = 0; i < count; i++) positions[i] = boxed[i];
+            size = count;
+        }
+    }
+
+    // One query's filters; a null category list means any category
+    private static class Filter {
+        final boolean[] categories;
+        final List<Category> categoryList;
+        final Double minPrice;
+        final Double maxPrice;
+        final boolean inStockOnly;
+
+        Filter(boolean[] categories, List<Category> categoryList, Double minPrice, Double maxPrice, boolean inStockOnly) {
+            this.categories = categories;
+            this.categoryList = categoryList;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.inStockOnly = inStockOnly;
+        }
+
+        boolean byCategory() { return categoryList != null; }
+        boolean byPrice() { return minPrice != null || maxPrice != null; }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private Product[] products = new Product[16];
+    private int[] categoryOf = new int[16];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int live;
+    private int stockedLive;
+    private final Map<String, Integer> slotById = new HashMap<>();
+    // Category slug (lower case, no spaces, as products.js builds it) -> category, in slug order
+    private final Map<String, Category> categoriesBySlug = new TreeMap<>();
+    private final List<Category> categories = new ArrayList<>();
+    private final BitSet inStock = new BitSet();
+    private final TreeMap<Double, Integer> allPrices = new TreeMap<>();
+    private final TreeMap<Double, Integer> stockedPrices = new TreeMap<>();
+    private final Map<String, Ordering> orderings = new HashMap<>();
+    private final Ordering byPrice;
+
+    ProductQueryIndex(List<Product> catalog) {
+        orderings.put(SORT_ID, new Ordering(BY_ID));
+        byPrice = new Ordering(BY_PRICE);
+        orderings.put(SORT_PRICE_ASC, byPrice);
+        orderings.put(SORT_PRICE_DESC, new Ordering(BY_PRICE.reversed()));
+        orderings.put(SORT_NAME, new Ordering(BY_NAME));
+
+        // Bulk load: fill the slots, then sort each order once
+        for (Product product : catalog) {
+            attach(allocateSlot(), product, false);
+        }
+        int[] slots = new int[slotCount];
+        for (int i = 0; i < slotCount; i++) slots[i] = i;
+        for (Ordering ordering : orderings.values()) {
+            ordering.sortAll(slots, slotCount);
+        }
+    }
+
+    // Adds a new product or replaces the indexed one with the same id
+    void put(Product product) {
+        lock.writeLock().lock();
+        try {
+            Integer pos = slotById.get(product.getId());
+            if (pos != null) {
+                detach(pos);
+            } else {
+                pos = allocateSlot();
+            }
+            attach(pos, product, true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String productId) {
+        lock.writeLock().lock();
+        try {
+            Integer pos = slotById.remove(productId);
+            if (pos == null) return;
+            detach(pos);
+            if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            freeSlots[freeCount++] = pos;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Re-reads one product's stock after a reservation or release
+    void refreshStock(Product product) {
+        lock.writeLock().lock();
+        try {
+            Integer pos = slotById.get(product.getId());
+            if (pos == null || products[pos] != product) return;
+            boolean stocked = product.getTotalInventoryCount() > 0;
+            if (inStock.get(pos) != stocked) {
+                setStocked(pos, stocked);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    ProductService.ProductPage query(String category, Double minPrice, Double maxPrice,
+                                     boolean inStockOnly, String sort, int limit, String cursor) {
+        lock.readLock().lock();
+        try {
+            Filter filter = filter(category, minPrice, maxPrice, inStockOnly);
+            Ordering ordering = orderings.getOrDefault(sort == null ? SORT_ID : sort, orderings.get(SORT_ID));
+            Product after = decodeCursor(cursor);
+
+            int candidates = smallestPostingSize(filter, true, true, true);
+            List<Product> items = candidates * DENSE_DIVISOR >= live
+                    ? walkOrdering(ordering, filter, after, limit + 1)
+                    : selectFromPostings(ordering, filter, after, limit + 1);
+            boolean more = items.size() > limit;
+            if (more) items.remove(limit);
+            String nextCursor = more ? encodeCursor(items.get(items.size() - 1)) : null;
+
+            return new ProductService.ProductPage(items, buildFacets(filter), nextCursor, countMatches(filter));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Filter filter(String category, Double minPrice, Double maxPrice, boolean inStockOnly) {
+        if (category == null || category.isBlank() || category.equalsIgnoreCase("all")) {
+            return new Filter(null, null, minPrice, maxPrice, inStockOnly);
+        }
+        // Same "contains" match products.js used on slugs
+        String wanted = slug(category);
+        List<Category> matched = new ArrayList<>();
+        Category exact = categoriesBySlug.get(wanted);
+        if (exact != null) {
+            matched.add(exact);
+        } else {
+            for (Category c : categoriesBySlug.values()) {
+                if (c.slug.contains(wanted)) matched.add(c);
+            }
+        }
+        boolean[] selected = new boolean[categories.size()];
+        for (Category c : matched) selected[c.id] = true;
+        return new Filter(selected, matched, minPrice, maxPrice, inStockOnly);
+    }
+
+    // Pages in the requested order, checking each product against the filters
+    private List<Product> walkOrdering(Ordering ordering, Filter filter, Product after, int wanted) {
+        List<Product> items = new ArrayList<>(wanted);
+        for (int i = after == null ? 0 : ordering.firstAfter(after); i < ordering.size && items.size() < wanted; i++) {
+            int pos = ordering.positions[i];
+            if (matches(pos, filter, true, true, true)) items.add(products[pos]);
+        }
+        return items;
+    }
+
+    // The first `wanted` matches after the cursor, found from the smallest postings with a bounded heap
+    private List<Product> selectFromPostings(Ordering ordering, Filter filter, Product after, int wanted) {
+        Comparator<Product> order = ordering.comparator;
+        PriorityQueue<Product> best = new PriorityQueue<>(wanted + 1, order.reversed());
+        forEachCandidate(filter, true, true, true, pos -> {
+            Product product = products[pos];
+            if (!matches(pos, filter, true, true, true)) return;
+            if (after != null && order.compare(product, after) <= 0) return;
+            best.add(product);
+            if (best.size() > wanted) best.poll();
+        });
+        List<Product> items = new ArrayList<>(best);
+        items.sort(order);
+        return items;
+    }
+
+    private int countMatches(Filter filter) {
+        if (!filter.byPrice()) {
+            if (!filter.byCategory()) return filter.inStockOnly ? stockedLive : live;
+            int total = 0;
+            for (Category c : filter.categoryList) total += filter.inStockOnly ? c.stockedCount : c.count;
+            return total;
+        }
+        int[] total = new int[1];
+        forEachCandidate(filter, true, true, true, pos -> {
+            if (matches(pos, filter, true, true, true)) total[0]++;
+        });
+        return total[0];
+    }
+
+    // Facet counts leave out their own filter, so each one says what picking that value would give
+    private Map<String, Object> buildFacets(Filter filter) {
+        int[] categoryCounts = new int[categories.size()];
+        if (!filter.byPrice()) {
+            for (Category c : categories) categoryCounts[c.id] = filter.inStockOnly ? c.stockedCount : c.count;
+        } else {
+            forEachCandidate(filter, false, true, filter.inStockOnly, pos -> {
+                if (categoryOf[pos] >= 0 && matches(pos, filter, false, true, true)) categoryCounts[categoryOf[pos]]++;
+            });
+        }
+        List<Map<String, Object>> categoryFacets = new ArrayList<>();
+        for (Category c : categoriesBySlug.values()) {
+            if (c.count == 0) continue; // every product in it was removed
+            Map<String, Object> facet = new LinkedHashMap<>();
+            facet.put("slug", c.slug);
+            facet.put("name", c.name);
+            facet.put("count", categoryCounts[c.id]);
+            categoryFacets.add(facet);
+        }
+
+        int withoutStock = 0;
+        int stockedMatches = 0;
+        if (!filter.byPrice()) {
+            if (!filter.byCategory()) {
+                withoutStock = live;
+                stockedMatches = stockedLive;
+            } else {
+                for (Category c : filter.categoryList) {
+                    withoutStock += c.count;
+                    stockedMatches += c.stockedCount;
+                }
+            }
+        } else {
+            int[] counts = new int[2];
+            forEachCandidate(filter, true, true, false, pos -> {
+                if (!matches(pos, filter, true, true, false)) return;
+                counts[0]++;
+                if (inStock.get(pos)) counts[1]++;
+            });
+            withoutStock = counts[0];
+            stockedMatches = counts[1];
+        }
+
+        Map<String, Object> facets = new LinkedHashMap<>();
+        facets.put("categories", categoryFacets);
+        facets.put("inStock", stockedMatches);
+        facets.put("outOfStock", withoutStock - stockedMatches);
+        facets.put("price", priceBounds(filter));
+        return facets;
+    }
+
+    // Cheapest and dearest product matching the category and stock filters, from the price sets
+    private Map<String, Object> priceBounds(Filter filter) {
+        Double min = null;
+        Double max = null;
+        if (!filter.byCategory()) {
+            TreeMap<Double, Integer> prices = filter.inStockOnly ? stockedPrices : allPrices;
+            if (!prices.isEmpty()) {
+                min = prices.firstKey();
+                max = prices.lastKey();
+            }
+        } else {
+            for (Category c : filter.categoryList) {
+                TreeMap<Double, Integer> prices = filter.inStockOnly ? c.stockedPrices : c.prices;
+                if (prices.isEmpty()) continue;
+                if (min == null || prices.firstKey() < min) min = prices.firstKey();
+                if (max == null || prices.lastKey() > max) max = prices.lastKey();
+            }
+        }
+        Map<String, Object> bounds = new LinkedHashMap<>();
+        if (min != null) bounds.put("min", min);
+        if (max != null) bounds.put("max", max);
+        return bounds;
+    }
+
+    private boolean matches(int pos, Filter filter, boolean category, boolean price, boolean stock) {
+        Product product = products[pos];
+        if (product == null) return false;
+        if (category && filter.byCategory() && (categoryOf[pos] < 0 || !filter.categories[categoryOf[pos]])) return false;
+        if (price && filter.minPrice != null && product.getPrice() < filter.minPrice) return false;
+        if (price && filter.maxPrice != null && product.getPrice() > filter.maxPrice) return false;
+        return !(stock && filter.inStockOnly && !inStock.get(pos));
+    }
+
+    // Size of the smallest posting among the enabled filters (the whole catalog when none apply)
+    private int smallestPostingSize(Filter filter, boolean category, boolean price, boolean stock) {
+        int smallest = live;
+        if (category && filter.byCategory()) smallest = Math.min(smallest, categorySize(filter));
+        if (price && filter.byPrice()) smallest = Math.min(smallest, priceTo(filter) - priceFrom(filter));
+        if (stock && filter.inStockOnly) smallest = Math.min(smallest, stockedLive);
+        return smallest;
+    }
+
+    // Visits every slot of the smallest enabled posting; callers still check the other filters
+    private void forEachCandidate(Filter filter, boolean category, boolean price, boolean stock, IntConsumer action) {
+        int smallest = smallestPostingSize(filter, category, price, stock);
+        if (category && filter.byCategory() && categorySize(filter) == smallest) {
+            for (Category c : filter.categoryList) {
+                for (int pos = c.members.nextSetBit(0); pos >= 0; pos = c.members.nextSetBit(pos + 1)) action.accept(pos);
+            }
+        } else if (price && filter.byPrice() && priceTo(filter) - priceFrom(filter) == smallest) {
+            for (int i = priceFrom(filter), to = priceTo(filter); i < to; i++) action.accept(byPrice.positions[i]);
+        } else if (stock && filter.inStockOnly && stockedLive == smallest) {
+            for (int pos = inStock.nextSetBit(0); pos >= 0; pos = inStock.nextSetBit(pos + 1)) action.accept(pos);
+        } else {
+            for (int pos = 0; pos < slotCount; pos++) {
+                if (products[pos] != null) action.accept(pos);
+            }
+        }
+    }
+
+    private static int categorySize(Filter filter) {
+        int size = 0;
+        for (Category c : filter.categoryList) size += c.count;
+        return size;
+    }
+
+    // First index in the price order with price >= minPrice
+    private int priceFrom(Filter filter) {
+        if (filter.minPrice == null) return 0;
+        int lo = 0, hi = byPrice.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (products[byPrice.positions[mid]].getPrice() < filter.minPrice) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    // First index in the price order with price > maxPrice, never before priceFrom
+    private int priceTo(Filter filter) {
+        int from = priceFrom(filter);
+        if (filter.maxPrice == null) return byPrice.size;
+        int lo = from, hi = byPrice.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (products[byPrice.positions[mid]].getPrice() <= filter.maxPrice) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) return freeSlots[--freeCount];
+        if (slotCount == products.length) {
+            products = Arrays.copyOf(products, slotCount * 2);
+            categoryOf = Arrays.copyOf(categoryOf, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private void attach(int pos, Product product, boolean ordered) {
+        products[pos] = product;
+        slotById.put(product.getId(), pos);
+        live++;
+        addPrice(allPrices, product.getPrice());
+
+        categoryOf[pos] = -1;
+        if (product.getCategory() != null && !product.getCategory().isBlank()) {
+            String slug = slug(product.getCategory());
+            Category c = categoriesBySlug.get(slug);
+            if (c == null) {
+                c = new Category(categories.size(), slug);
+                categories.add(c);
+                categoriesBySlug.put(slug, c);
+            }
+            if (c.count == 0) c.name = product.getCategory();
+            c.members.set(pos);
+            c.count++;
+            addPrice(c.prices, product.getPrice());
+            categoryOf[pos] = c.id;
+        }
+
+        if (product.getTotalInventoryCount() > 0) {
+            setStocked(pos, true);
+        }
+        if (ordered) {
+            for (Ordering ordering : orderings.values()) ordering.insert(pos);
+        }
+    }
+
+    private void detach(int pos) {
+        Product product = products[pos];
+        for (Ordering ordering : orderings.values()) ordering.remove(pos);
+        if (inStock.get(pos)) {
+            setStocked(pos, false);
+        }
+        if (categoryOf[pos] >= 0) {
+            Category c = categories.get(categoryOf[pos]);
+            c.members.clear(pos);
+            c.count--;
+            removePrice(c.prices, product.getPrice());
+            categoryOf[pos] = -1;
+        }
+        removePrice(allPrices, product.getPrice());
+        live--;
+        products[pos] = null;
+    }
+
+    private void setStocked(int pos, boolean stocked) {
+        double price = products[pos].getPrice();
+        Category c = categoryOf[pos] >= 0 ? categories.get(categoryOf[pos]) : null;
+        inStock.set(pos, stocked);
+        if (stocked) {
+            stockedLive++;
+            addPrice(stockedPrices, price);
+            if (c != null) {
+                c.stockedCount++;
+                addPrice(c.stockedPrices, price);
+            }
+        } else {
+            stockedLive--;
+            removePrice(stockedPrices, price);
+            if (c != null) {
+                c.stockedCount--;
+                removePrice(c.stockedPrices, price);
+            }
+        }
+    }
+
+    private static void addPrice(TreeMap<Double, Integer> prices, double price) {
+        prices.merge(price, 1, Integer::sum);
+    }
+
+    private static void removePrice(TreeMap<Double, Integer> prices, double price) {
+        prices.computeIfPresent(price, (p, n) -> n == 1 ? null : n - 1);
+    }
+
+    private static String encodeCursor(Product last) {
+        String raw = last.getId() + "\n" + last.getPrice() + "\n" + (last.getName() == null ? "" : last.getName());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Rebuilds a probe product holding the sort keys of the cursor's item. The cursor carries
+     * the keys rather than a position, so paging stays correct when that product has since
+     * been edited or removed.
+     */
+    private static Product decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 3);
+            Product probe = new Product();
+            probe.setId(parts[0]);
+            probe.setPrice(Double.parseDouble(parts[1]));
+            probe.setName(parts[2]);
+            return probe;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    static String slug(String category) {
+        return category.toLowerCase(Locale.ROOT).replaceAll("\\s", "");
+    }
+
+    private static String nameKey(Product product) {
+        return product.getName() == null ? "" : product.getName().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,580 @@
+package com.handycraft.services;
+
+import com.handycraft.models.Product;
+import com.handycraft.utils.IntCountMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory inverted index over product name, category and description.
+ *
+ * Terms live in a sorted dictionary so a query token also matches every term it is a prefix of
+ * (autocomplete). Each term's postings are an immutable pair of int arrays in impact order
+ * (highest weight first, then doc id), replaced copy-on-write, so searches never lock. Terms
+ * found in at least 1/64 of the docs also carry a doc-id bitset. Writers (ProductService, under
+ * its lock) update only the terms of the product that changed.
+ *
+ * A search works out which docs match every word with bitset ANDs, so the total is always
+ * exact. Scoring then reads at most SCORE_BUDGET postings per word, strongest first. A doc
+ * whose weight for a word lies past that cut-off is ranked as if it had the cut-off weight, so
+ * ranking is exact whenever every word's postings fit the budget and bounded otherwise.
+ */
+class ProductSearchIndex {
+
+    // Field weights: a hit in the name counts more than one in the description
+    private static final int NAME_WEIGHT = 3;
+    private static final int CATEGORY_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    // How many dictionary terms one prefix may expand to
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    // Shorter words are matched exactly; a one-letter prefix would pull in most of the dictionary
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MAX_QUERY_TOKENS = 16;
+    // Postings scored per query word; keeps searches for very common words bounded
+    private static final int SCORE_BUDGET = Integer.getInteger("handycraft.search.scoreBudget", 2048);
+
+    // Docs containing one term, with the weighted number of hits per doc
+    private static class Postings {
+        static final Postings EMPTY = new Postings(new int[0], new int[0], 0);
+
+        // Highest weight first, then by doc id
+        final int[] docs;
+        final int[] weights;
+        // Doc-id bitset, only for terms in at least 1/64 of the docs, where ORing words beats walking the list
+        final long[] bits;
+
+        Postings(int[] docs, int[] weights, int docCount) {
+            this(docs, weights, dense(docs.length, docCount) ? bitsOf(docs) : null);
+        }
+
+        private Postings(int[] docs, int[] weights, long[] bits) {
+            this.docs = docs;
+            this.weights = weights;
+            this.bits = bits;
+        }
+
+        Postings with(int doc, int weight, int docCount) {
+            Postings base = without(doc, docCount);
+            int insert = base.impactPosition(doc, weight);
+            int[] newDocs = new int[base.docs.length + 1];
+            int[] newWeights = new int[base.docs.length + 1];
+            System.arraycopy(base.docs, 0, newDocs, 0, insert);
+            System.arraycopy(base.weights, 0, newWeights, 0, insert);
+            newDocs[insert] = doc;
+            newWeights[insert] = weight;
+            System.arraycopy(base.docs, insert, newDocs, insert + 1, base.docs.length - insert);
+            System.arraycopy(base.weights, insert, newWeights, insert + 1, base.docs.length - insert);
+            if (base.bits == null || !dense(newDocs.length, docCount)) return new Postings(newDocs, newWeights, docCount);
+            long[] newBits = Arrays.copyOf(base.bits, Math.max(base.bits.length, (doc >>> 6) + 1));
+            newBits[doc >>> 6] |= 1L << doc;
+            return new Postings(newDocs, newWeights, newBits);
+        }
+
+        Postings without(int doc, int docCount) {
+            int at = -1;
+            for (int i = 0; i < docs.length; i++) {
+                if (docs[i] == doc) {
+                    at = i;
+                    break;
+                }
+            }
+            if (at < 0) return this;
+            int[] newDocs = new int[docs.length - 1];
+            int[] newWeights = new int[docs.length - 1];
+            System.arraycopy(docs, 0, newDocs, 0, at);
+            System.arraycopy(weights, 0, newWeights, 0, at);
+            System.arraycopy(docs, at + 1, newDocs, at, docs.length - at - 1);
+            System.arraycopy(weights, at + 1, newWeights, at, docs.length - at - 1);
+            if (bits == null || !dense(newDocs.length, docCount)) return new Postings(newDocs, newWeights, docCount);
+            long[] newBits = bits.clone();
+            newBits[doc >>> 6] &= ~(1L << doc);
+            return new Postings(newDocs, newWeights, newBits);
+        }
+
+        // Where (doc, weight) goes in impact order
+        private int impactPosition(int doc, int weight) {
+            int lo = 0, hi = docs.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (weights[mid] > weight || (weights[mid] == weight && docs[mid] < doc)) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        private static boolean dense(int postings, int docCount) {
+            return postings > 0 && (long) postings * 64 >= docCount;
+        }
+
+        private static long[] bitsOf(int[] docs) {
+            int max = 0;
+            for (int doc : docs) max = Math.max(max, doc);
+            long[] bits = new long[(max >>> 6) + 1];
+            for (int doc : docs) bits[doc >>> 6] |= 1L << doc;
+            return bits;
+        }
+    }
+
+    private static class PostingsBuilder {
+        int[] docs = new int[4];
+        int[] weights = new int[4];
+        int size;
+
+        void add(int doc, int weight) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            docs[size] = doc;
+            weights[size++] = weight;
+        }
+
+        // Sorts into impact order by packing (weight descending, doc) into one long per posting
+        Postings build(int docCount) {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) (Integer.MAX_VALUE - weights[i]) << 32) | docs[i];
+            }
+            Arrays.sort(packed);
+            int[] sortedDocs = new int[size];
+            int[] sortedWeights = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedDocs[i] = (int) packed[i];
+                sortedWeights[i] = Integer.MAX_VALUE - (int) (packed[i] >>> 32);
+            }
+            return new Postings(sortedDocs, sortedWeights, docCount);
+        }
+    }
+
+    private final ConcurrentSkipListMap<String, Postings> dictionary = new ConcurrentSkipListMap<>();
+    // Writer-side bookkeeping, only touched under ProductService's lock
+    private final Map<String, Integer> docByProductId = new HashMap<>();
+    private final Map<Integer, Map<String, Integer>> termsByDoc = new HashMap<>();
+    // Doc id -> product id; grown by copying, read without locking
+    private volatile String[] productIdByDoc = new String[64];
+    private volatile int docCount;
+
+    ProductSearchIndex(List<Product> products) {
+        Map<String, PostingsBuilder> building = new HashMap<>();
+        for (Product product : products) {
+            if (docByProductId.containsKey(product.getId())) continue;
+            int doc = newDoc(product.getId());
+            Map<String, Integer> terms = termsOf(product);
+            termsByDoc.put(doc, terms);
+            for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+                building.computeIfAbsent(entry.getKey(), t -> new PostingsBuilder()).add(doc, entry.getValue());
+            }
+        }
+        for (Map.Entry<String, PostingsBuilder> entry : building.entrySet()) {
+            dictionary.put(entry.getKey(), entry.getValue().build(docCount));
+        }
+    }
+
+    // Adds a product or re-indexes it after an edit
+    void put(Product product) {
+        Integer existing = docByProductId.get(product.getId());
+        int doc = existing != null ? existing : newDoc(product.getId());
+
+        Map<String, Integer> terms = termsOf(product);
+        Map<String, Integer> previous = termsByDoc.getOrDefault(doc, Map.of());
+        for (String term : previous.keySet()) {
+            if (!terms.containsKey(term)) {
+                removePosting(term, doc);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : terms.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                Postings postings = dictionary.getOrDefault(entry.getKey(), Postings.EMPTY);
+                dictionary.put(entry.getKey(), postings.with(doc, entry.getValue(), docCount));
+            }
+        }
+        termsByDoc.put(doc, terms);
+    }
+
+    void remove(String productId) {
+        Integer doc = docByProductId.remove(productId);
+        if (doc == null) return;
+        Map<String, Integer> terms = termsByDoc.remove(doc);
+        if (terms != null) {
+            for (String term : terms.keySet()) {
+                removePosting(term, doc);
+            }
+        }
+        productIdByDoc[doc] = null;
+    }
+
+    /**
+     * Product ids matching every token of the query, best first, plus the total match count.
+     * Each token matches terms it is a prefix of; an exact term match scores double.
+     */
+    SearchResult search(String query, int limit) {
+        List<List<TermMatch>> tokenMatches = new ArrayList<>();
+        for (String token : new LinkedHashSet<>(tokenize(query))) {
+            if (tokenMatches.size() == MAX_QUERY_TOKENS) break;
+            List<TermMatch> matches = expand(token);
+            if (matches.isEmpty()) {
+                return new SearchResult(new ArrayList<>(), 0); // a word nothing contains
+            }
+            tokenMatches.add(matches);
+        }
+        if (tokenMatches.isEmpty()) {
+            return new SearchResult(new ArrayList<>(), 0);
+        }
+        // Rarest word first, so the match set shrinks as early as possible
+        tokenMatches.sort(Comparator.comparingLong(ProductSearchIndex::postingCount));
+
+        int size = docCount;
+        String[] productIds = productIdByDoc;
+
+        // Docs containing every word: one bitset per word, ANDed together
+        long[] matched = null;
+        long[] tokenBits = new long[(size + 63) >>> 6];
+        for (List<TermMatch> matches : tokenMatches) {
+            Arrays.fill(tokenBits, 0);
+            for (TermMatch match : matches) {
+                long[] bits = match.postings.bits;
+                if (bits != null) {
+                    for (int w = 0, n = Math.min(bits.length, tokenBits.length); w < n; w++) tokenBits[w] |= bits[w];
+                } else {
+                    for (int doc : match.postings.docs) {
+                        if (doc < size) tokenBits[doc >>> 6] |= 1L << doc; // later docs were added after this search started
+                    }
+                }
+            }
+            if (matched == null) {
+                matched = tokenBits;
+                tokenBits = new long[matched.length];
+            } else {
+                for (int w = 0; w < matched.length; w++) matched[w] &= tokenBits[w];
+            }
+        }
+
+        int total = 0;
+        for (long w : matched) total += Long.bitCount(w);
+        if (total == 0) {
+            return new SearchResult(new ArrayList<>(), 0);
+        }
+
+        // Score the strongest postings of each word, remembering where each word was cut off
+        int words = tokenMatches.size();
+        int expected = (int) Math.min(total, (long) SCORE_BUDGET * words);
+        IntCountMap scores = new IntCountMap(expected);
+        // doc -> bit per word it was scored for; with one word every scored doc was seen by it
+        IntCountMap seenIn = words > 1 ? new IntCountMap(expected) : null;
+        int[] cutoff = new int[words];
+        for (int t = 0; t < words; t++) {
+            ImpactMerge merge = new ImpactMerge(tokenMatches.get(t));
+            for (int scanned = 0; scanned < SCORE_BUDGET && merge.hasNext(); scanned++) {
+                int doc = merge.doc();
+                int contribution = merge.contribution();
+                merge.advance();
+                if (!isSet(matched, doc)) continue;
+                scores.add(doc, contribution);
+                if (seenIn != null && (seenIn.get(doc) & (1 << t)) == 0) seenIn.add(doc, 1 << t);
+            }
+            cutoff[t] = merge.hasNext() ? merge.contribution() : 0;
+        }
+
+        TopDocs top = new TopDocs(limit);
+        int unseenScore = 0;
+        for (int c : cutoff) unseenScore += c;
+        for (int slot = 0; slot < scores.capacity(); slot++) {
+            int doc = scores.keyAt(slot);
+            if (doc < 0 || productIds[doc] == null) continue;
+            int score = scores.countAt(slot);
+            int seen = seenIn != null ? seenIn.get(doc) : 1;
+            for (int t = 0; t < words; t++) {
+                if ((seen & (1 << t)) == 0) score += cutoff[t];
+            }
+            top.offer(doc, score);
+        }
+        if (unseenScore > 0) {
+            // Docs no word's budget reached all rank alike, so only the lowest ids can place
+            int offered = 0;
+            for (int doc = nextSetBit(matched, 0); doc >= 0 && offered < limit; doc = nextSetBit(matched, doc + 1)) {
+                if (scores.get(doc) != 0 || productIds[doc] == null) continue;
+                top.offer(doc, unseenScore);
+                offered++;
+            }
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (int doc : top.sorted()) {
+            ids.add(productIds[doc]);
+        }
+        return new SearchResult(ids, total);
+    }
+
+    // One dictionary term a query word matched
+    private static class TermMatch {
+        final Postings postings;
+        final int factor;
+
+        TermMatch(Postings postings, int factor) {
+            this.postings = postings;
+            this.factor = factor;
+        }
+    }
+
+    // Walks the postings of all of a word's terms together, strongest contribution first (then doc id)
+    private static class ImpactMerge {
+        private final TermMatch[] matches;
+        private final int[] cursor;
+        // Current posting of each term, cached so heap comparisons stay in two arrays
+        private final int[] headDoc;
+        private final int[] headContribution;
+        private final int[] heap; // indexes into matches, best current posting on top
+        private int size;
+
+        ImpactMerge(List<TermMatch> terms) {
+            matches = terms.toArray(new TermMatch[0]);
+            cursor = new int[matches.length];
+            headDoc = new int[matches.length];
+            headContribution = new int[matches.length];
+            heap = new int[matches.length];
+            for (int m = 0; m < matches.length; m++) {
+                if (matches[m].postings.docs.length == 0) continue;
+                loadHead(m);
+                heap[size] = m;
+                siftUp(size++);
+            }
+        }
+
+        boolean hasNext() { return size > 0; }
+        int doc() { return headDoc[heap[0]]; }
+        int contribution() { return headContribution[heap[0]]; }
+
+        void advance() {
+            int m = heap[0];
+            if (++cursor[m] == matches[m].postings.docs.length) {
+                heap[0] = heap[--size];
+            } else {
+                loadHead(m);
+            }
+            siftDown(0);
+        }
+
+        private void loadHead(int m) {
+            Postings postings = matches[m].postings;
+            headDoc[m] = postings.docs[cursor[m]];
+            headContribution[m] = postings.weights[cursor[m]] * matches[m].factor;
+        }
+
+        private boolean before(int a, int b) {
+            int ca = headContribution[a], cb = headContribution[b];
+            return ca != cb ? ca > cb : headDoc[a] < headDoc[b];
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(heap[i], heap[parent])) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) return;
+                int best = left;
+                if (left + 1 < size && before(heap[left + 1], heap[left])) best = left + 1;
+                if (!before(heap[best], heap[i])) return;
+                swap(i, best);
+                i = best;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int tmp = heap[a];
+            heap[a] = heap[b];
+            heap[b] = tmp;
+        }
+    }
+
+    private static boolean isSet(long[] bits, int doc) {
+        int w = doc >>> 6;
+        return w < bits.length && (bits[w] & (1L << doc)) != 0;
+    }
+
+    private static int nextSetBit(long[] bits, int from) {
+        int w = from >>> 6;
+        if (w >= bits.length) return -1;
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == bits.length) return -1;
+            word = bits[w];
+        }
+    }
+
+    // The exact term plus terms it is a prefix of. Very short words only match exactly.
+    private List<TermMatch> expand(String token) {
+        List<TermMatch> matches = new ArrayList<>();
+        if (token.length() < MIN_PREFIX_LENGTH) {
+            Postings postings = dictionary.get(token);
+            if (postings != null) matches.add(new TermMatch(postings, 2));
+            return matches;
+        }
+        for (Map.Entry<String, Postings> entry : prefixRange(token).entrySet()) {
+            if (matches.size() == MAX_PREFIX_EXPANSIONS) break;
+            matches.add(new TermMatch(entry.getValue(), entry.getKey().length() == token.length() ? 2 : 1));
+        }
+        return matches;
+    }
+
+    private static long postingCount(List<TermMatch> matches) {
+        long count = 0;
+        for (TermMatch match : matches) count += match.postings.docs.length;
+        return count;
+    }
+
+    static class SearchResult {
+        final List<String> productIds;
+        final int total;
+
+        SearchResult(List<String> productIds, int total) {
+            this.productIds = productIds;
+            this.total = total;
+        }
+    }
+
+    // Bounded min-heap of (doc, score): higher score first, lower doc id on ties
+    private static class TopDocs {
+        private final int[] docs;
+        private final int[] scores;
+        private int size;
+
+        TopDocs(int limit) {
+            this.docs = new int[Math.max(0, limit)];
+            this.scores = new int[Math.max(0, limit)];
+        }
+
+        void offer(int doc, int score) {
+            if (docs.length == 0) return;
+            if (size < docs.length) {
+                docs[size] = doc;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (better(score, doc, scores[0], docs[0])) {
+                docs[0] = doc;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        int[] sorted() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> better(scores[a], docs[a], scores[b], docs[b]) ? -1
+                    : better(scores[b], docs[b], scores[a], docs[a]) ? 1 : 0);
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) result[i] = docs[order[i]];
+            return result;
+        }
+
+        private static boolean better(int scoreA, int docA, int scoreB, int docB) {
+            return scoreA != scoreB ? scoreA > scoreB : docA < docB;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!better(scores[parent], docs[parent], scores[i], docs[i])) break;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) return;
+                int worst = left;
+                int right = left + 1;
+                if (right < size && better(scores[left], docs[left], scores[right], docs[right])) worst = right;
+                if (!better(scores[i], docs[i], scores[worst], docs[worst])) return;
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int doc = docs[a];
+            docs[a] = docs[b];
+            docs[b] = doc;
+            int score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+
+    private NavigableMap<String, Postings> prefixRange(String prefix) {
+        return dictionary.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private void removePosting(String term, int doc) {
+        Postings postings = dictionary.get(term);
+        if (postings == null) return;
+        Postings updated = postings.without(doc, docCount);
+        if (updated.docs.length == 0) {
+            dictionary.remove(term);
+        } else {
+            dictionary.put(term, updated);
+        }
+    }
+
+    private int newDoc(String productId) {
+        int doc = docCount;
+        String[] ids = productIdByDoc;
+        if (doc == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[doc] = productId;
+        productIdByDoc = ids;
+        docByProductId.put(productId, doc);
+        docCount = doc + 1; // publish last, once the doc's slot is filled
+        return doc;
+    }
+
+    private static Map<String, Integer> termsOf(Product product) {
+        Map<String, Integer> terms = new HashMap<>();
+        addTerms(terms, product.getName(), NAME_WEIGHT);
+        addTerms(terms, product.getCategory(), CATEGORY_WEIGHT);
+        addTerms(terms, product.getDescription(), DESCRIPTION_WEIGHT);
+        return terms;
+    }
+
+    private static void addTerms(Map<String, Integer> terms, String text, int weight) {
+        for (String token : tokenize(text)) {
+            terms.merge(token, weight, Integer::sum);
+        }
+    }
+
+    // Lower-cased runs of letters and digits
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -4,16 +4,27 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.handycraft.models.Product;
+import com.handycraft.utils.CachedResponse;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Type;
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.HashMap;
 import java.util.Map;
@@ -21,14 +32,104 @@ import java.util.Map;
 public class ProductService {
 
     private static final String PRODUCT_DATA_FILE = "src/main/resources/data/products.json";
+    // Changes made within this window are merged into one write. 0 writes through on every change.
+    private static final long FLUSH_WINDOW_MS = Long.getLong("handycraft.products.flushWindowMs", 200);
+    private static final long FLUSH_WAIT_TIMEOUT_MS = 10_000;
     private static ProductService instance;
 
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
-    private List<Product> products;
+    private final ProductCatalog catalog;
+    private final ProductSearchIndex searchIndex;
     private final ReentrantLock fileLock = new ReentrantLock();
+    private final InventoryEngine inventory = new InventoryEngine();
+    private final StatsRegistry stats = StatsRegistry.getInstance();
+
+    // Bumped on every catalog or stock change; each product remembers the value of its last change
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final Map<String, Long> productRevisions = new ConcurrentHashMap<>();
+    // Distinguishes versions across restarts, since the counter starts over at 0
+    private final String versionEpoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Gson responseGson = new Gson();
+    private volatile CatalogSnapshot catalogSnapshot;
+
+    // Updated in place as products and stock change
+    private final ProductQueryIndex queryIndex;
+
+    public static class SearchPage {
+        private final String query;
+        private final List<Product> items;
+        private final int total;
+
+        SearchPage(String query, List<Product> items, int total) {
+            this.query = query;
+            this.items = items;
+            this.total = total;
+        }
+
+        public String getQuery() { return query; }
+        public List<Product> getItems() { return items; }
+        public int getTotal() { return total; }
+    }
+
+    // One page of a filtered product query plus facet counts over the same filters
+    public static class ProductPage {
+        private final List<Product> items;
+        private final Map<String, Object> facets;
+        private final String nextCursor;
+        private final int total;
+
+        ProductPage(List<Product> items, Map<String, Object> facets, String nextCursor, int total) {
+            this.items = items;
+            this.facets = facets;
+            this.nextCursor = nextCursor;
+            this.total = total;
+        }
+
+        public List<Product> getItems() { return items; }
+        public Map<String, Object> getFacets() { return facets; }
+        public String getNextCursor() { return nextCursor; }
+        public int getTotal() { return total; }
+    }
+
+    // Serialized catalog for one catalog version
+    private static class CatalogSnapshot {
+        final long version;
+        final CachedResponse response;
+
+        CatalogSnapshot(long version, CachedResponse response) {
+            this.version = version;
+            this.response = response;
+        }
+    }
+
+    // Write-behind state: every mutation bumps dirtyVersion, the flusher publishes flushedVersion
+    private final AtomicLong dirtyVersion = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Object flushMonitor = new Object();
+    private long flushedVersion;
+    private volatile IOException lastFlushError;
+    private ScheduledExecutorService flusher;
 
     private ProductService() {
-        this.products = loadProductsFromFile();
+        List<Product> loaded = loadProductsFromFile();
+        for (Product p : loaded) {
+            inventory.register(p);
+            stats.productAdded(p.getId(), () -> inventory.totalStock(p.getId()));
+        }
+        this.catalog = new ProductCatalog(loaded);
+        this.searchIndex = new ProductSearchIndex(loaded);
+        this.queryIndex = new ProductQueryIndex(loaded);
+
+        if (FLUSH_WINDOW_MS > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "product-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            // Don't lose the last window of changes on a normal shutdown
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "product-flusher-shutdown"));
+        }
     }
 
     private List<Product> loadProductsFromFile() {
@@ -49,24 +150,140 @@ public class ProductService {
         }
     }
 
-    private void saveProductsToFile() throws IOException {
-        fileLock.lock();
+    // Records an in-memory change. The actual write happens on the flusher thread.
+    private void markDirty() throws IOException {
+        dirtyVersion.incrementAndGet();
+        if (flusher == null) {
+            // Catalog edits call this holding fileLock, and flush() takes writeLock and then fileLock.
+            // Taking fileLock first here too keeps one order (fileLock, writeLock) for every caller.
+            fileLock.lock();
+            try {
+                flush();
+            } finally {
+                fileLock.unlock();
+            }
+            IOException error = lastFlushError;
+            if (error != null) throw error;
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            flusher.schedule(this::flush, FLUSH_WINDOW_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Writes the current catalog if anything changed since the last flush
+    private void flush() {
+        flushScheduled.set(false);
+        writeLock.lock();
         try {
-            File dataDir = new File("src/main/resources/data");
-            if (!dataDir.exists()) {
-                dataDir.mkdirs();
+            long target;
+            String json;
+            synchronized (flushMonitor) {
+                if (flushedVersion >= dirtyVersion.get()) return;
+            }
+
+            // Serialize under the catalog lock so we see a consistent list, write outside it
+            fileLock.lock();
+            try {
+                target = dirtyVersion.get();
+                json = gson.toJson(catalog.list());
+            } finally {
+                fileLock.unlock();
             }
 
-            try (FileWriter writer = new FileWriter(PRODUCT_DATA_FILE)) {
-                gson.toJson(this.products, writer);
+            writeProductsToFile(json);
+            lastFlushError = null;
+            synchronized (flushMonitor) {
+                flushedVersion = target;
+                flushMonitor.notifyAll();
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving product data file: " + e.getMessage());
+            lastFlushError = e;
+            // Keep the changes dirty and try again after another window
+            if (flusher != null && flushScheduled.compareAndSet(false, true)) {
+                flusher.schedule(this::flush, FLUSH_WINDOW_MS, TimeUnit.MILLISECONDS);
             }
         } finally {
-            fileLock.unlock();
+            writeLock.unlock();
+        }
+    }
+
+    private void writeProductsToFile(String json) throws IOException {
+        File dataDir = new File("src/main/resources/data");
+        if (!dataDir.exists()) {
+            dataDir.mkdirs();
         }
+
+        File temp = new File(PRODUCT_DATA_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        }
+        Files.move(temp.toPath(), new File(PRODUCT_DATA_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Flush barrier: blocks until every change made before this call is on disk.
+     * For callers that must not acknowledge a change before it is durable.
+     */
+    public void awaitFlush() throws IOException {
+        long target = dirtyVersion.get();
+        if (flusher == null) return;
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(this::flush);
+        }
+
+        long deadline = System.currentTimeMillis() + FLUSH_WAIT_TIMEOUT_MS;
+        synchronized (flushMonitor) {
+            while (flushedVersion < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    IOException error = lastFlushError;
+                    throw error != null ? error : new IOException("Timed out waiting for product data to be saved");
+                }
+                try {
+                    flushMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for product data to be saved");
+                }
+            }
+        }
+    }
+
+    // Increases on every product or stock change
+    public long getCatalogVersion() {
+        return catalogVersion.get();
+    }
+
+    /**
+     * The catalog as compact JSON, serialized at most once per catalog version.
+     * The version is read before the products, so a change made while serializing
+     * only causes one extra rebuild on the next call.
+     */
+    public CachedResponse getCatalogResponse() {
+        long version = catalogVersion.get();
+        CatalogSnapshot snapshot = catalogSnapshot;
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot.response;
+        }
+        byte[] body = responseGson.toJson(catalog.list()).getBytes(StandardCharsets.UTF_8);
+        String etag = "\"catalog-" + versionEpoch + "-" + version + "\"";
+        snapshot = new CatalogSnapshot(version, new CachedResponse(etag, body, "application/json"));
+        catalogSnapshot = snapshot;
+        return snapshot.response;
     }
 
     public List<Product> loadAllProducts() {
-        return Collections.unmodifiableList(this.products);
+        return catalog.list();
+    }
+
+    public Product getProductById(String productId) {
+        return catalog.get(productId);
+    }
+
+    public List<Product> getProductsByCategory(String category) {
+        return catalog.getByCategory(category);
     }
 
     public static synchronized ProductService getInstance() {
@@ -78,17 +295,7 @@ public class ProductService {
     public Product addProduct(Product newProduct) throws IOException {
         fileLock.lock();
         try {
-            int nextId = products.stream()
-                    .mapToInt(p -> {
-                        try {
-                            return Integer.parseInt(p.getId());
-                        } catch (NumberFormatException e) {
-                            return 0;
-                        }
-                    })
-                    .max()
-                    .orElse(0) + 1;
-
+            int nextId = catalog.nextId();
             newProduct.setId(String.valueOf(nextId));
 
             if (newProduct.getCategory() == null || newProduct.getCategory().isBlank()) {
@@ -101,8 +308,13 @@ public class ProductService {
                 newProduct.setInventory(defaultInventory);
             }
 
-            this.products.add(newProduct);
-            saveProductsToFile();
+            inventory.register(newProduct);
+            catalog.add(newProduct);
+            stats.productAdded(newProduct.getId(), () -> inventory.totalStock(newProduct.getId()));
+            searchIndex.put(newProduct);
+            queryIndex.put(newProduct);
+            touch(newProduct.getId());
+            markDirty();
 
             return newProduct;
         } finally {
@@ -112,20 +324,19 @@ public class ProductService {
 
     public boolean updateProduct(Product updatedProduct) throws IOException {
         fileLock.lock();
-        boolean found = false;
         try {
-            for (int i = 0; i < this.products.size(); i++) {
-                if (this.products.get(i).getId().equals(updatedProduct.getId())) {
-                    this.products.set(i, updatedProduct);
-                    found = true;
-                    break;
-                }
+            if (catalog.get(updatedProduct.getId()) == null) {
+                return false;
             }
 
-            if (found) {
-                saveProductsToFile();
-            }
-            return found;
+            inventory.register(updatedProduct);
+            catalog.replace(updatedProduct);
+            stats.stockChanged(updatedProduct.getId(), () -> inventory.totalStock(updatedProduct.getId()));
+            searchIndex.put(updatedProduct);
+            queryIndex.put(updatedProduct);
+            touch(updatedProduct.getId());
+            markDirty();
+            return true;
         } finally {
             fileLock.unlock();
         }
@@ -133,53 +344,114 @@ public class ProductService {
 
     public boolean deleteProduct(String productId) throws IOException {
         fileLock.lock();
-        boolean removed = false;
         try {
-            removed = this.products.removeIf(p -> p.getId().equals(productId));
-
-            if (removed) {
-                saveProductsToFile();
+            if (catalog.remove(productId) == null) {
+                return false;
             }
-            return removed;
+
+            inventory.remove(productId);
+            searchIndex.remove(productId);
+            queryIndex.remove(productId);
+            stats.productRemoved(productId);
+            touch(productId);
+            markDirty();
+            return true;
         } finally {
             fileLock.unlock();
         }
     }
 
-    public void reduceStock(String productId, String variant, int quantity) throws IOException {
-        fileLock.lock();
+    /**
+     * Takes stock for every item of an order, or for none of them.
+     * Items use the order format: id, variant (defaults to "Default"), quantity and name.
+     */
+    public void reserveStock(List<Map<String, Object>> items) throws IOException {
+        List<InventoryEngine.Line> lines = toLines(items);
+        InventoryEngine.Line shortage = inventory.reserve(lines);
+        if (shortage != null) {
+            throw new IOException("Insufficient stock for " + shortage.label + " (" + shortage.variant + ")");
+        }
+        lines.forEach(line -> stockChanged(line.productId));
         try {
-            boolean stockUpdated = false;
-            for (Product p : this.products) {
-                if (p.getId().equals(productId)) {
-                    Map<String, Integer> inventory = p.getInventory();
-
-                    if (inventory != null && inventory.containsKey(variant)) {
-                        int currentStock = inventory.get(variant);
-                        inventory.put(variant, Math.max(0, currentStock - quantity));
-                        stockUpdated = true;
-                    }
-                    break;
-                }
-            }
+            markDirty();
+        } catch (IOException e) {
+            // Write-through save failed: no order will be placed, so put the stock back
+            inventory.release(lines);
+            lines.forEach(line -> stockChanged(line.productId));
+            throw e;
+        }
+    }
+
+    // Undoes a successful reserveStock
+    public void releaseStock(List<Map<String, Object>> items) throws IOException {
+        List<InventoryEngine.Line> lines = toLines(items);
+        inventory.release(lines);
+        lines.forEach(line -> stockChanged(line.productId));
+        markDirty();
+    }
+
+    private void touch(String productId) {
+        productRevisions.put(productId, catalogVersion.incrementAndGet());
+    }
+
+    // Stock moved: flip the product's in-stock bit in the query index
+    private void stockChanged(String productId) {
+        touch(productId);
+        // Re-read from the counters, not the product's published map, so the latest report reflects the latest stock
+        stats.stockChanged(productId, () -> inventory.totalStock(productId));
+        Product product = catalog.get(productId);
+        if (product == null) return;
+        queryIndex.refreshStock(product);
+    }
 
-            if (stockUpdated) {
-                saveProductsToFile();
+    /**
+     * Full-text search over name, category and description, best match first.
+     * Every query word must match; a word also matches longer words it starts,
+     * so partial input works for autocomplete.
+     */
+    public SearchPage searchProducts(String query, int limit) {
+        ProductSearchIndex.SearchResult result = searchIndex.search(query, limit);
+        List<Product> items = new ArrayList<>();
+        for (String productId : result.productIds) {
+            Product product = catalog.get(productId);
+            if (product != null) {
+                items.add(product);
             }
-        } finally {
-            fileLock.unlock();
         }
+        return new SearchPage(query, items, result.total);
+    }
+
+    /**
+     * Filtered, sorted page of products. category matches the slug products.js builds
+     * (lower case, no spaces); sort is one of id, price_asc, price_desc or name.
+     * Null filters are ignored.
+     */
+    public ProductPage queryProducts(String category, Double minPrice, Double maxPrice,
+                                     boolean inStockOnly, String sort, int limit, String cursor) {
+        return queryIndex.query(category, minPrice, maxPrice, inStockOnly, sort, limit, cursor);
+    }
+
+    /**
+     * Changes whenever the product or its stock changes, so callers can cache
+     * anything derived from it and compare revisions to know when to rebuild.
+     */
+    public long getProductRevision(String productId) {
+        return productRevisions.getOrDefault(productId, 0L);
     }
 
     public boolean isStockAvailable(String productId, String variant, int requestedQuantity) {
-        for (Product p : this.products) {
-            if (p.getId().equals(productId)) {
-                Map<String, Integer> inventory = p.getInventory();
-                if (inventory != null && inventory.containsKey(variant)) {
-                    return inventory.get(variant) >= requestedQuantity;
-                }
-            }
+        return inventory.isAvailable(productId, variant, requestedQuantity);
+    }
+
+    private List<InventoryEngine.Line> toLines(List<Map<String, Object>> items) {
+        List<InventoryEngine.Line> lines = new ArrayList<>();
+        for (Map<String, Object> item : items) {
+            String productId = String.valueOf(item.get("id"));
+            String variant = (String) item.getOrDefault("variant", "Default");
+            Object qtyObj = item.get("quantity");
+            int quantity = (qtyObj instanceof Number) ? ((Number) qtyObj).intValue() : 0;
+            lines.add(new InventoryEngine.Line(productId, variant, quantity, String.valueOf(item.get("name"))));
         }
-        return false;
+        return lines;
     }
-}
\ No newline at end of file
+}
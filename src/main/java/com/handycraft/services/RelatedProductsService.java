@@ -0,0 +1,154 @@
+package com.handycraft.services;
+
+import com.handycraft.models.Order;
+import com.handycraft.models.Product;
+import com.handycraft.utils.IntCountMap;
+import com.handycraft.utils.OrderItems;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * "Frequently bought together": how many Completed orders contain each pair of products.
+ * Product ids are dictionary-encoded to ints and each product's row is a sparse
+ * IntCountMap of co-purchased product codes, updated as orders reach or leave Completed.
+ * Asking for a product's related items reads its one row and keeps the best few.
+ */
+public class RelatedProductsService implements OrderListener {
+    // A huge order would add items^2 pairs; only the first this many distinct products count
+    private static final int MAX_ITEMS_PER_ORDER = 50;
+
+    private static RelatedProductsService instance;
+
+    private final ProductService productService = ProductService.getInstance();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> productCodes = new HashMap<>();
+    private final List<String> productIds = new ArrayList<>();
+    private final List<IntCountMap> rows = new ArrayList<>();
+
+    public static class RelatedItem {
+        private final Product product;
+        private final int orders;
+
+        RelatedItem(Product product, int orders) {
+            this.product = product;
+            this.orders = orders;
+        }
+
+        public Product getProduct() { return product; }
+        public int getOrders() { return orders; }
+    }
+
+    private RelatedProductsService() {}
+
+    public static synchronized RelatedProductsService getInstance() {
+        if (instance == null) {
+            instance = new RelatedProductsService();
+            OrderService.getInstance().addOrderListener(instance);
+        }
+        return instance;
+    }
+
+    @Override
+    public void orderChanged(Order order, String oldStatus, String newStatus) {
+        boolean wasCompleted = "Completed".equalsIgnoreCase(oldStatus);
+        boolean nowCompleted = "Completed".equalsIgnoreCase(newStatus);
+        if (wasCompleted == nowCompleted || order.getItems() == null) return;
+
+        Set<String> distinct = new LinkedHashSet<>();
+        for (Map<String, Object> item : order.getItems()) {
+            String productId = OrderItems.productId(item);
+            if (productId == null) continue;
+            distinct.add(productId);
+            if (distinct.size() == MAX_ITEMS_PER_ORDER) break;
+        }
+        if (distinct.size() < 2) return;
+
+        int delta = nowCompleted ? 1 : -1;
+        lock.writeLock().lock();
+        try {
+            int[] codes = new int[distinct.size()];
+            int n = 0;
+            for (String productId : distinct) {
+                codes[n++] = productCode(productId);
+            }
+            for (int a = 0; a < codes.length; a++) {
+                IntCountMap row = rows.get(codes[a]);
+                for (int b = 0; b < codes.length; b++) {
+                    if (a != b) row.add(codes[b], delta);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to limit products most often in the same Completed order as this one, most
+     * frequent first (ties by lower code, i.e. first seen). Empty for unknown products.
+     */
+    public List<RelatedItem> getRelated(String productId, int limit) {
+        int[] bestCodes = new int[limit];
+        int[] bestCounts = new int[limit];
+        String[] bestIds = new String[limit];
+        int size = 0;
+
+        lock.readLock().lock();
+        try {
+            Integer code = productCodes.get(productId);
+            if (code != null) {
+                IntCountMap row = rows.get(code);
+                // Partial insertion sort: only the current top `limit` entries are kept in order
+                for (int slot = 0; slot < row.capacity(); slot++) {
+                    int other = row.keyAt(slot);
+                    int count = row.countAt(slot);
+                    if (other < 0 || count <= 0) continue; // empty slot
+                    if (size == limit && !better(count, other, bestCounts[size - 1], bestCodes[size - 1])) continue;
+                    int i = size < limit ? size++ : size - 1;
+                    while (i > 0 && better(count, other, bestCounts[i - 1], bestCodes[i - 1])) {
+                        bestCounts[i] = bestCounts[i - 1];
+                        bestCodes[i] = bestCodes[i - 1];
+                        i--;
+                    }
+                    bestCounts[i] = count;
+                    bestCodes[i] = other;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                bestIds[i] = productIds.get(bestCodes[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<RelatedItem> related = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Product product = productService.getProductById(bestIds[i]);
+            if (product != null) { // skip products deleted since
+                related.add(new RelatedItem(product, bestCounts[i]));
+            }
+        }
+        return related;
+    }
+
+    private static boolean better(int count, int code, int otherCount, int otherCode) {
+        return count > otherCount || (count == otherCount && code < otherCode);
+    }
+
+    // Called with the write lock held
+    private int productCode(String productId) {
+        Integer code = productCodes.get(productId);
+        if (code == null) {
+            code = productIds.size();
+            productCodes.put(productId, code);
+            productIds.add(productId);
+            rows.add(new IntCountMap());
+        }
+        return code;
+    }
+}
@@ -0,0 +1,385 @@
+package com.handycraft.services;
+
+import com.handycraft.models.Order;
+import com.handycraft.models.Product;
+import com.handycraft.utils.OrderDates;
+import com.handycraft.utils.OrderItems;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZonedDateTime;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Revenue, order and unit totals per calendar day, with per-product and per-category
+ * breakdowns, for the sales report. Only sold orders (Shipped or Completed) count. The
+ * buckets are updated from order events as orders reach or leave those statuses, so a
+ * report only merges the day buckets in its range; weeks and months are built from days.
+ *
+ * Each day's counters are updated in place by order events, which only add to a few
+ * entries. Reports read an immutable copy of a day, made when a report first asks for
+ * the day after it changed, so checkouts never copy whole days.
+ */
+public class SalesRollupService implements OrderListener {
+    private static SalesRollupService instance;
+
+    private final ProductService productService = ProductService.getInstance();
+    // Keyed by the order's own calendar day, as written in its date
+    private final NavigableMap<LocalDate, DayCounters> days = new ConcurrentSkipListMap<>();
+    // What each counted order added, so it can be taken back out exactly. Only touched by order events.
+    private final Map<String, Sale> counted = new HashMap<>();
+
+    public enum Granularity {
+        DAY, WEEK, MONTH;
+
+        // Accepts day/week/month as well as daily/weekly/monthly, as the report page says
+        public static Granularity parse(String value) {
+            switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "day": case "daily": return DAY;
+                case "week": case "weekly": return WEEK;
+                case "month": case "monthly": return MONTH;
+                default: throw new IllegalArgumentException("Unknown granularity: " + value);
+            }
+        }
+    }
+
+    public static class SalesReport {
+        private final String granularity;
+        private final String from;
+        private final String to;
+        private final Totals totals;
+        // Every product sold in the range, highest revenue first
+        private final List<Item> products;
+        private final List<Period> periods;
+
+        SalesReport(Granularity granularity, LocalDate from, LocalDate to, Totals totals,
+                    List<Item> products, List<Period> periods) {
+            this.granularity = granularity.name().toLowerCase(Locale.ROOT);
+            this.from = from == null ? null : from.toString();
+            this.to = to == null ? null : to.toString();
+            this.totals = totals;
+            this.products = products;
+            this.periods = periods;
+        }
+
+        public Totals getTotals() { return totals; }
+        public List<Item> getProducts() { return products; }
+        public List<Period> getPeriods() { return periods; }
+    }
+
+    public static class Totals {
+        private int orders;
+        private long units;
+        private double revenue;
+        private transient long revenueCents;
+
+        void add(int orders, long units, long revenueCents) {
+            this.orders += orders;
+            this.units += units;
+            this.revenueCents += revenueCents;
+            this.revenue = centsToAmount(this.revenueCents);
+        }
+
+        public int getOrders() { return orders; }
+        public long getUnits() { return units; }
+        public double getRevenue() { return revenue; }
+    }
+
+    public static class Period extends Totals {
+        private final String period;
+        private List<Item> products;
+        private List<Item> categories;
+        private transient final Map<String, Item> productTotals = new HashMap<>();
+        private transient final Map<String, Item> categoryTotals = new HashMap<>();
+
+        Period(String period) {
+            this.period = period;
+        }
+
+        public String getPeriod() { return period; }
+    }
+
+    public static class Item {
+        private final String id;
+        private final String name;
+        private long units;
+        private double revenue;
+        private transient long revenueCents;
+
+        Item(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        void add(long units, long revenueCents) {
+            this.units += units;
+            this.revenueCents += revenueCents;
+            this.revenue = centsToAmount(this.revenueCents);
+        }
+    }
+
+    private SalesRollupService() {}
+
+    public static synchronized SalesRollupService getInstance() {
+        if (instance == null) {
+            instance = new SalesRollupService();
+            OrderService.getInstance().addOrderListener(instance);
+        }
+        return instance;
+    }
+
+    @Override
+    public void orderChanged(Order order, String oldStatus, String newStatus) {
+        boolean wasSold = isSold(oldStatus);
+        boolean nowSold = isSold(newStatus);
+        if (wasSold == nowSold || order.getOrderId() == null) return;
+
+        if (nowSold) {
+            Sale sale = toSale(order);
+            if (sale != null && counted.putIfAbsent(order.getOrderId(), sale) == null) {
+                apply(sale, 1);
+            }
+        } else {
+            Sale sale = counted.remove(order.getOrderId());
+            if (sale != null) {
+                apply(sale, -1);
+            }
+        }
+    }
+
+    /**
+     * Sold totals between from and to (inclusive, either may be null for open-ended),
+     * grouped by day, ISO week (2025-W52) or month (2025-12), oldest first.
+     */
+    public SalesReport getSales(Granularity granularity, LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, DayCounters> range = days;
+        if (from != null && to != null) {
+            range = from.isAfter(to) ? Collections.emptyNavigableMap() : days.subMap(from, true, to, true);
+        } else if (from != null) {
+            range = days.tailMap(from, true);
+        } else if (to != null) {
+            range = days.headMap(to, true);
+        }
+
+        Totals totals = new Totals();
+        Map<String, Item> products = new HashMap<>();
+        Map<String, Period> periods = new LinkedHashMap<>();
+        for (Map.Entry<LocalDate, DayCounters> entry : range.entrySet()) {
+            DayBucket day = entry.getValue().snapshot();
+            if (day.orders == 0) continue; // emptied and being removed
+            Period period = periods.computeIfAbsent(label(entry.getKey(), granularity), Period::new);
+            period.add(day.orders, day.units, day.revenueCents);
+            totals.add(day.orders, day.units, day.revenueCents);
+            for (Map.Entry<String, LineTotal> product : day.products.entrySet()) {
+                LineTotal line = product.getValue();
+                period.productTotals.computeIfAbsent(product.getKey(), id -> new Item(id, line.name))
+                        .add(line.units, line.revenueCents);
+                products.computeIfAbsent(product.getKey(), id -> new Item(id, line.name))
+                        .add(line.units, line.revenueCents);
+            }
+            for (Map.Entry<String, LineTotal> category : day.categories.entrySet()) {
+                LineTotal line = category.getValue();
+                period.categoryTotals.computeIfAbsent(category.getKey(), c -> new Item(null, c))
+                        .add(line.units, line.revenueCents);
+            }
+        }
+
+        List<Period> result = new ArrayList<>(periods.values());
+        for (Period period : result) {
+            period.products = byRevenue(period.productTotals);
+            period.categories = byRevenue(period.categoryTotals);
+        }
+        return new SalesReport(granularity, from, to, totals, byRevenue(products), result);
+    }
+
+    private static List<Item> byRevenue(Map<String, Item> items) {
+        List<Item> sorted = new ArrayList<>(items.values());
+        sorted.sort((a, b) -> Long.compare(b.revenueCents, a.revenueCents));
+        return sorted;
+    }
+
+    private static String label(LocalDate day, Granularity granularity) {
+        switch (granularity) {
+            case WEEK:
+                return String.format("%d-W%02d",
+                        day.get(IsoFields.WEEK_BASED_YEAR), day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            case MONTH:
+                return YearMonth.from(day).toString();
+            default:
+                return day.toString();
+        }
+    }
+
+    // Order events arrive one at a time, so only this method adds or removes days
+    private void apply(Sale sale, int sign) {
+        DayCounters day = days.computeIfAbsent(sale.day, d -> new DayCounters());
+        if (day.add(sale, sign) == 0) {
+            days.remove(sale.day);
+        }
+    }
+
+    private Sale toSale(Order order) {
+        ZonedDateTime date = OrderDates.parse(order.getOrderDate());
+        if (date == null) {
+            System.err.println("Sales rollup skipping " + order.getOrderId() + ": unreadable date " + order.getOrderDate());
+            return null;
+        }
+        List<SaleLine> lines = new ArrayList<>();
+        long units = 0;
+        if (order.getItems() != null) {
+            for (Map<String, Object> item : order.getItems()) {
+                String productId = OrderItems.productId(item);
+                if (productId == null) continue;
+                long quantity = OrderItems.quantity(item);
+                double price = OrderItems.price(item);
+                Object name = item.get("name");
+                Product product = productService.getProductById(productId);
+                String category = product != null && product.getCategory() != null ? product.getCategory() : "Uncategorized";
+                lines.add(new SaleLine(productId, name != null ? name.toString() : productId, category,
+                        quantity, Math.round(price * quantity * 100)));
+                units += quantity;
+            }
+        }
+        return new Sale(date.toLocalDate(), units, Math.round(order.getTotalAmount() * 100), lines);
+    }
+
+    private static boolean isSold(String status) {
+        return "Shipped".equalsIgnoreCase(status) || "Completed".equalsIgnoreCase(status);
+    }
+
+    private static double centsToAmount(long cents) {
+        return cents / 100.0;
+    }
+
+    private static class Sale {
+        final LocalDate day;
+        final long units;
+        final long revenueCents;
+        final List<SaleLine> lines;
+
+        Sale(LocalDate day, long units, long revenueCents, List<SaleLine> lines) {
+            this.day = day;
+            this.units = units;
+            this.revenueCents = revenueCents;
+            this.lines = lines;
+        }
+    }
+
+    private static class SaleLine {
+        final String productId;
+        final String name;
+        final String category;
+        final long units;
+        final long revenueCents;
+
+        SaleLine(String productId, String name, String category, long units, long revenueCents) {
+            this.productId = productId;
+            this.name = name;
+            this.category = category;
+            this.units = units;
+            this.revenueCents = revenueCents;
+        }
+    }
+
+    private static class LineTotal {
+        final String name;
+        final long units;
+        final long revenueCents;
+
+        LineTotal(String name, long units, long revenueCents) {
+            this.name = name;
+            this.units = units;
+            this.revenueCents = revenueCents;
+        }
+    }
+
+    private static class LineCounter {
+        final String name;
+        long units;
+        long revenueCents;
+
+        LineCounter(String name) {
+            this.name = name;
+        }
+    }
+
+    // One day's running totals, changed in place under its own monitor
+    private static class DayCounters {
+        private int orders;
+        private long units;
+        private long revenueCents;
+        private final Map<String, LineCounter> products = new HashMap<>();
+        private final Map<String, LineCounter> categories = new HashMap<>();
+        // Copy for reports, remade on the first read after a change
+        private DayBucket snapshot = DayBucket.EMPTY;
+        private boolean changed;
+
+        // Returns the day's order count afterwards
+        synchronized int add(Sale sale, int sign) {
+            orders += sign;
+            units += sign * sale.units;
+            revenueCents += sign * sale.revenueCents;
+            for (SaleLine line : sale.lines) {
+                add(products, line.productId, line.name, sign * line.units, sign * line.revenueCents);
+                add(categories, line.category, line.category, sign * line.units, sign * line.revenueCents);
+            }
+            changed = true;
+            return orders;
+        }
+
+        synchronized DayBucket snapshot() {
+            if (changed) {
+                snapshot = new DayBucket(orders, units, revenueCents, copy(products), copy(categories));
+                changed = false;
+            }
+            return snapshot;
+        }
+
+        private static void add(Map<String, LineCounter> counters, String key, String name, long units, long revenueCents) {
+            LineCounter counter = counters.computeIfAbsent(key, k -> new LineCounter(name));
+            counter.units += units;
+            counter.revenueCents += revenueCents;
+            if (counter.units == 0 && counter.revenueCents == 0) {
+                counters.remove(key);
+            }
+        }
+
+        private static Map<String, LineTotal> copy(Map<String, LineCounter> counters) {
+            Map<String, LineTotal> totals = new HashMap<>();
+            for (Map.Entry<String, LineCounter> entry : counters.entrySet()) {
+                LineCounter counter = entry.getValue();
+                totals.put(entry.getKey(), new LineTotal(counter.name, counter.units, counter.revenueCents));
+            }
+            return totals;
+        }
+    }
+
+    // A copy of one day's totals; never modified after it is made
+    private static class DayBucket {
+        static final DayBucket EMPTY = new DayBucket(0, 0, 0, Map.of(), Map.of());
+
+        final int orders;
+        final long units;
+        final long revenueCents;
+        final Map<String, LineTotal> products;
+        final Map<String, LineTotal> categories;
+
+        DayBucket(int orders, long units, long revenueCents,
+                  Map<String, LineTotal> products, Map<String, LineTotal> categories) {
+            this.orders = orders;
+            this.units = units;
+            this.revenueCents = revenueCents;
+            this.products = products;
+            this.categories = categories;
+        }
+    }
+}
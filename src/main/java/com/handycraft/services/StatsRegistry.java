@@ -0,0 +1,112 @@
+package com.handycraft.services;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Dashboard counters kept up to date by the services as things change, so reading them
+ * never has to walk orders, users or products. Low stock is tracked as a set of product
+ * ids. Membership is decided inside a per-product compute that reads the stock total
+ * itself, so concurrent checkouts can't apply an older total after a newer one.
+ */
+public class StatsRegistry {
+    // Same cut-off the admin product table highlights
+    private static final int LOW_STOCK_THRESHOLD = Integer.getInteger("handycraft.stats.lowStockThreshold", 5);
+    private static final String[] DASHBOARD_STATUSES = {"Pending", "Processing", "Shipped", "Completed"};
+
+    private static StatsRegistry instance;
+
+    private final AtomicLong users = new AtomicLong();
+    private final AtomicLong products = new AtomicLong();
+    private final AtomicLong orders = new AtomicLong();
+    // Keyed by lower-cased status
+    private final Map<String, AtomicLong> ordersByStatus = new ConcurrentHashMap<>();
+    // Product id -> TRUE while its total stock is under the threshold
+    private final Map<String, Boolean> lowStockProducts = new ConcurrentHashMap<>();
+
+    private StatsRegistry() {}
+
+    public static synchronized StatsRegistry getInstance() {
+        if (instance == null) {
+            instance = new StatsRegistry();
+        }
+        return instance;
+    }
+
+    void userAdded() {
+        users.incrementAndGet();
+    }
+
+    void productAdded(String productId, IntSupplier totalStock) {
+        products.incrementAndGet();
+        stockChanged(productId, totalStock);
+    }
+
+    void productRemoved(String productId) {
+        products.decrementAndGet();
+        lowStockProducts.remove(productId);
+    }
+
+    // totalStock is read under the product's entry lock and returns a negative value once the product is gone
+    void stockChanged(String productId, IntSupplier totalStock) {
+        lowStockProducts.compute(productId, (id, wasLow) -> {
+            int total = totalStock.getAsInt();
+            return total >= 0 && total < LOW_STOCK_THRESHOLD ? Boolean.TRUE : null;
+        });
+    }
+
+    void orderAdded(String status) {
+        orders.incrementAndGet();
+        statusCounter(status).incrementAndGet();
+    }
+
+    void orderRemoved(String status) {
+        orders.decrementAndGet();
+        statusCounter(status).decrementAndGet();
+    }
+
+    void orderStatusChanged(String oldStatus, String newStatus) {
+        if (statusKey(oldStatus).equals(statusKey(newStatus))) return;
+        statusCounter(oldStatus).decrementAndGet();
+        statusCounter(newStatus).incrementAndGet();
+    }
+
+    public long getOrderCount(String status) {
+        AtomicLong counter = ordersByStatus.get(statusKey(status));
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Everything the admin dashboard shows. The flat keys match the old /stats response;
+     * ordersByStatus also covers statuses beyond the four the dashboard names.
+     */
+    public Map<String, Object> getSnapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("totalProducts", products.get());
+        snapshot.put("lowStockProducts", lowStockProducts.size());
+        snapshot.put("lowStockThreshold", LOW_STOCK_THRESHOLD);
+        snapshot.put("registeredUsers", users.get());
+        snapshot.put("totalOrders", orders.get());
+        for (String status : DASHBOARD_STATUSES) {
+            snapshot.put(status.toLowerCase(Locale.ROOT) + "Orders", getOrderCount(status));
+        }
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        ordersByStatus.forEach((status, count) -> {
+            if (count.get() != 0) byStatus.put(status, count.get());
+        });
+        snapshot.put("ordersByStatus", byStatus);
+        return snapshot;
+    }
+
+    private AtomicLong statusCounter(String status) {
+        return ordersByStatus.computeIfAbsent(statusKey(status), s -> new AtomicLong());
+    }
+
+    private static String statusKey(String status) {
+        return status == null ? "unknown" : status.toLowerCase(Locale.ROOT);
+    }
+}
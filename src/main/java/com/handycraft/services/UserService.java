@@ -16,6 +16,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock; // Using a lock for thread-safe list modification
 import java.util.Map;
 import java.util.HashMap;
@@ -27,6 +28,11 @@ public class UserService {
     // Use a lock to ensure thread safety when modifying the users list and saving the file
     private final ReentrantLock fileLock = new ReentrantLock();
 
+    // Lookup indexes, keyed by lower-cased email and by userId
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+    private final Map<String, User> usersById = new ConcurrentHashMap<>();
+    private final StatsRegistry stats = StatsRegistry.getInstance();
+
     // SINGLETON IMPLEMENTATION
     private static UserService instance;
     public static synchronized UserService getInstance() {
@@ -38,6 +44,23 @@ public class UserService {
     private UserService() {
         // Load users on service initialization
         this.users = loadUsers();
+        for (User user : this.users) {
+            indexUser(user);
+        }
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private void indexUser(User user) {
+        if (user.getEmail() != null) {
+            usersByEmail.put(emailKey(user.getEmail()), user);
+        }
+        if (user.getUserId() != null) {
+            usersById.put(user.getUserId(), user);
+        }
+        stats.userAdded();
     }
 
     // --- Private File I/O Methods ---
@@ -82,14 +105,14 @@ public class UserService {
     // --- Public Authentication/Registration Methods ---
 
     public User registerUser(String username, String email, String plainPassword, String answer1, String answer2, String answer3) {
-        if (findUserByEmail(email) != null) {
+        if (emailExists(email)) {
             return null; // User already exists
         }
 
         User newUser = new User();
         newUser.setUserId(UUID.randomUUID().toString());
         newUser.setUsername(username);
-        newUser.setEmail(email.toLowerCase());
+        newUser.setEmail(emailKey(email));
         newUser.setRole("customer");
 
         // Generate salt and hash for password
@@ -108,17 +131,25 @@ public class UserService {
         newUser.setSecurityAnswer3Hash(HashUtil.hashSecurityAnswer(answer3.trim().toLowerCase(), securitySalt));
 
         synchronized (this.users) {
+            // Re-check under the lock so two concurrent registrations can't both win
+            if (usersByEmail.containsKey(emailKey(newUser.getEmail()))) {
+                return null;
+            }
             this.users.add(newUser);
+            indexUser(newUser);
             saveUsers();
         }
         return newUser;
     }
 
+    // One hash lookup in the email index
+    public boolean emailExists(String email) {
+        return findUserByEmail(email) != null;
+    }
+
     public User findUserByEmail(String email) {
-        return this.users.stream()
-                .filter(u -> u.getEmail().equalsIgnoreCase(email))
-                .findFirst()
-                .orElse(null);
+        if (email == null) return null;
+        return usersByEmail.get(emailKey(email));
     }
 
     public User authenticateUser(String email, String plainPassword) {
@@ -204,31 +235,20 @@ public class UserService {
      * Finds a user by their unique ID. Used by AdminHandler for security check.
      */
     public User findUserById(String userId) {
-        return this.users.stream()
-                .filter(u -> u.getUserId().equals(userId))
-                .findFirst()
-                .orElse(null);
+        return userId == null ? null : usersById.get(userId);
     }
 
     public boolean updateUserRole(String userId, String newRole) {
-        boolean success = false;
-
         // Synchronization
         synchronized (this.users) {
-            for (int i = 0; i < this.users.size(); i++) {
-                User user = this.users.get(i);
-                if (user.getUserId().equals(userId)) {
-                    user.setRole(newRole);
-                    this.users.set(i, user);
-                    success = true;
-                    break;
-                }
-            }
-
-            if (success) {
-                saveUsers();
+            User user = findUserById(userId);
+            if (user == null) {
+                return false;
             }
+            // Same object is referenced by both indexes, so they stay current
+            user.setRole(newRole);
+            saveUsers();
         }
-        return success;
+        return true;
     }
 }
\ No newline at end of file
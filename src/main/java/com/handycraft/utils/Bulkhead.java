@@ -0,0 +1,100 @@
+package com.handycraft.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A separate bounded pool for one group of routes, so a burst in one group (image downloads,
+ * admin exports) can't take the threads another group (checkout) needs. The server executor
+ * only parses the request and hands it over; when the group is full the request gets a 503
+ * straight away instead of waiting behind unrelated work.
+ *
+ * Sized by handycraft.bulkhead.<group>.threads and handycraft.bulkhead.<group>.queue.
+ */
+public class Bulkhead {
+    private static final List<Bulkhead> ALL = new CopyOnWriteArrayList<>();
+
+    private final String group;
+    private final int threads;
+    private final int queueSize;
+    private final ThreadPoolExecutor pool;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String group, int defaultThreads, int defaultQueue) {
+        this.group = group;
+        this.threads = Math.max(1, Integer.getInteger("handycraft.bulkhead." + group + ".threads", defaultThreads));
+        this.queueSize = Math.max(1, Integer.getInteger("handycraft.bulkhead." + group + ".queue", defaultQueue));
+        AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> new Thread(r, group + "-worker-" + count.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        ALL.add(this);
+    }
+
+    // Runs the handler on this group's pool; the exchange is completed from there
+    public HttpHandler wrap(HttpHandler handler) {
+        return exchange -> {
+            try {
+                pool.execute(() -> run(handler, exchange));
+                accepted.increment();
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                ResponseUtil.sendResponse(exchange, 503,
+                        "{\"message\": \"Server is busy. Please try again shortly.\"}", "application/json");
+            }
+        };
+    }
+
+    private void run(HttpHandler handler, HttpExchange exchange) {
+        active.incrementAndGet();
+        try {
+            handler.handle(exchange);
+        } catch (Throwable e) {
+            // HttpServer only cleans up after handlers it called itself
+            System.err.println("Error handling " + exchange.getRequestURI() + " in " + group + ": " + e.getMessage());
+            exchange.close();
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        int running = active.get();
+        int queued = pool.getQueue().size();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("group", group);
+        metrics.put("threads", threads);
+        metrics.put("queueCapacity", queueSize);
+        metrics.put("active", running);
+        metrics.put("queued", queued);
+        // Share of the group's threads plus queue in use; at 1.0 new requests are turned away
+        metrics.put("saturation", (double) (running + queued) / (threads + queueSize));
+        metrics.put("accepted", accepted.sum());
+        metrics.put("rejected", rejected.sum());
+        return metrics;
+    }
+
+    public static List<Map<String, Object>> getAllMetrics() {
+        List<Map<String, Object>> metrics = new ArrayList<>();
+        for (Bulkhead bulkhead : ALL) {
+            metrics.add(bulkhead.getMetrics());
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,59 @@
+package com.handycraft.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body serialized once and sent many times: the raw bytes, a gzip copy
+ * for larger bodies and the ETag that identifies this exact content. The gzip copy is
+ * a different representation, so it carries its own strong ETag with a "-gz" suffix.
+ */
+public class CachedResponse {
+    // Below this size gzip doesn't pay for its header and the extra CPU on the client
+    private static final int GZIP_MIN_BYTES = 1024;
+
+    private final String etag;
+    private final byte[] body;
+    private final byte[] gzipBody;
+    private final String gzipEtag;
+    private final String contentType;
+
+    public CachedResponse(String etag, byte[] body, String contentType) {
+        this(etag, body, contentType, true);
+    }
+
+    // compress = false for content that is already compressed, like images
+    public CachedResponse(String etag, byte[] body, String contentType, boolean compress) {
+        this.etag = etag;
+        this.body = body;
+        this.contentType = contentType;
+        this.gzipBody = compress && body.length >= GZIP_MIN_BYTES ? gzip(body) : null;
+        this.gzipEtag = gzipBody != null ? gzipEtag(etag) : null;
+    }
+
+    public String getEtag() { return etag; }
+    public byte[] getBody() { return body; }
+    public byte[] getGzipBody() { return gzipBody; }
+    public String getGzipEtag() { return gzipEtag; }
+    public String getContentType() { return contentType; }
+
+    // "abc" -> "abc-gz"
+    private static String gzipEtag(String etag) {
+        int closingQuote = etag.lastIndexOf('"');
+        if (closingQuote <= 0) return etag + "-gz";
+        return etag.substring(0, closingQuote) + "-gz" + etag.substring(closingQuote);
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        } catch (IOException e) {
+            System.err.println("Could not compress cached response: " + e.getMessage());
+            return null;
+        }
+        byte[] compressed = out.toByteArray();
+        return compressed.length < body.length ? compressed : null;
+    }
+}
@@ -0,0 +1,111 @@
+package com.handycraft.utils;
+
+import java.util.Arrays;
+
+/**
+ * int -> int counts with open addressing over two primitive arrays, for sparse rows
+ * where a HashMap<Integer, Integer> would box every key and count. Keys must be >= 0.
+ * An entry whose count returns to zero is removed (by shifting later entries of its
+ * probe run back), so the table only holds live entries. Not thread-safe.
+ */
+public class IntCountMap {
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    public IntCountMap() {
+        this(8);
+    }
+
+    public IntCountMap(int expectedSize) {
+        int capacity = 8;
+        while (capacity * 3 < expectedSize * 4) capacity *= 2;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    // Adds delta to the key's count and returns the new count
+    public int add(int key, int delta) {
+        int slot = find(keys, key);
+        if (keys[slot] == EMPTY) {
+            if (delta == 0) return 0;
+            if ((size + 1) * 4 > keys.length * 3) {
+                grow();
+                slot = find(keys, key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        int count = counts[slot] + delta;
+        if (count == 0) {
+            removeSlot(slot);
+        } else {
+            counts[slot] = count;
+        }
+        return count;
+    }
+
+    public int get(int key) {
+        int slot = find(keys, key);
+        return keys[slot] == EMPTY ? 0 : counts[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Slot-level access for callers that walk every entry; skip slots whose key is negative (empty)
+    public int capacity() { return keys.length; }
+    public int keyAt(int slot) { return keys[slot]; }
+    public int countAt(int slot) { return counts[slot]; }
+
+    private static int find(int[] keys, int key) {
+        int mask = keys.length - 1;
+        int slot = home(key, mask);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int home(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // Backward-shift deletion: later entries of the run move into the hole if it lies on their probe path
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = home(keys[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                counts[hole] = counts[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        counts[hole] = 0;
+        size--;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = find(keys, oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+}
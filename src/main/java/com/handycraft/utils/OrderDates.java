@@ -0,0 +1,34 @@
+package com.handycraft.utils;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Reads the order date strings found in orders.json. OrderService writes Date.toString()
+ * ("Sun Dec 28 22:36:54 GMT+08:00 2025") and older checkouts wrote "2025-12-28 22:36"
+ * in the server's zone.
+ */
+public class OrderDates {
+    private static final DateTimeFormatter DATE_TO_STRING =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.ENGLISH);
+    private static final DateTimeFormatter SHORT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private OrderDates() {}
+
+    // The date in the zone it was written in, or null if it's missing or in neither format
+    public static ZonedDateTime parse(String orderDate) {
+        if (orderDate == null || orderDate.isBlank()) return null;
+        String value = orderDate.trim();
+        try {
+            return Character.isDigit(value.charAt(0))
+                    ? LocalDateTime.parse(value, SHORT).atZone(ZoneId.systemDefault())
+                    : ZonedDateTime.parse(value, DATE_TO_STRING);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.handycraft.utils;
+
+import java.util.Map;
+
+/**
+ * Reads the fields of an order's line items. Items come from orders.json through Gson,
+ * so numbers arrive as Double and product ids either as strings or as numbers.
+ */
+public class OrderItems {
+    private OrderItems() {}
+
+    // The item's product id ("12", never "12.0"), or null if it has none
+    public static String productId(Map<String, Object> item) {
+        Object id = item.get("id");
+        if (id == null) return null;
+        return id instanceof Number ? String.valueOf(((Number) id).longValue()) : id.toString();
+    }
+
+    public static int quantity(Map<String, Object> item) {
+        Object quantity = item.get("quantity");
+        return quantity instanceof Number ? ((Number) quantity).intValue() : 0;
+    }
+
+    public static double price(Map<String, Object> item) {
+        Object price = item.get("price");
+        return price instanceof Number ? ((Number) price).doubleValue() : 0;
+    }
+}
@@ -0,0 +1,36 @@
+package com.handycraft.utils;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+public class QueryUtil {
+
+    // Parses a raw query string (a=1&b=x%20y) into decoded key/value pairs. Later duplicates win.
+    public static Map<String, String> parse(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    // Integer parameter clamped to [min, max], or the default when missing or malformed
+    public static int getInt(Map<String, String> params, String key, int defaultValue, int min, int max) {
+        String value = params.get(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Math.max(min, Math.min(max, Integer.parseInt(value.trim())));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.handycraft.utils;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor for HttpServer exchanges, chosen by the handycraft.executor property:
+ *   bounded       (default) fixed platform pool with a bounded queue
+ *   virtual       one virtual thread per request, capped by maxConcurrent (JDK 21+, else bounded)
+ *   workstealing  ForkJoinPool, capped at threads + queue requests in flight
+ *
+ * When the limit is hit the exchange runs on a small shed pool instead, where overloadFilter
+ * answers 503 without reaching the handler. HttpServer reads the request line and headers
+ * before any filter runs, so a shed exchange that takes longer than prefix.shedTimeoutMs is
+ * interrupted, which closes its channel. If the shed pool is full too, execute throws and
+ * HttpServer's dispatcher closes the connection; the dispatcher never runs an exchange itself.
+ */
+public class RequestExecutor implements Executor {
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+    private static final Filter OVERLOAD_FILTER = new OverloadFilter();
+    private static RequestExecutor instance;
+
+    private final String name;
+    private final String mode;
+    private final int capacity;
+    private final ExecutorService delegate;
+    private final Semaphore permits; // null when the pool's own queue does the bounding
+    private final ThreadPoolExecutor shed;
+    private final ScheduledThreadPoolExecutor shedWatchdog;
+    private final long shedTimeoutMs;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Builds an executor from properties under the given prefix, e.g. handycraft.executor:
+     * the prefix itself selects the mode, prefix.threads / prefix.queue size the pool and
+     * prefix.maxConcurrent caps virtual threads. prefix.shedThreads and prefix.shedTimeoutMs
+     * size the pool that writes 503s.
+     */
+    public RequestExecutor(String name, String prefix, int defaultThreads, int defaultQueue) {
+        this.name = name;
+        int threads = Math.max(1, Integer.getInteger(prefix + ".threads", defaultThreads));
+        int queue = Math.max(0, Integer.getInteger(prefix + ".queue", defaultQueue));
+        String requested = System.getProperty(prefix, "bounded").trim().toLowerCase(Locale.ROOT);
+
+        ExecutorService virtual = requested.equals("virtual") ? newVirtualExecutor() : null;
+        if (virtual != null) {
+            this.mode = "virtual";
+            this.capacity = Math.max(1, Integer.getInteger(prefix + ".maxConcurrent", 1000));
+            this.delegate = virtual;
+            this.permits = new Semaphore(capacity);
+        } else if (requested.equals("workstealing")) {
+            this.mode = "workstealing";
+            this.capacity = threads + queue;
+            this.delegate = Executors.newWorkStealingPool(threads);
+            this.permits = new Semaphore(capacity);
+        } else {
+            if (!requested.equals("bounded")) {
+                System.err.println("Executor mode '" + requested + "' unavailable for " + name + ", using bounded");
+            }
+            this.mode = "bounded";
+            this.capacity = threads + queue;
+            AtomicInteger count = new AtomicInteger();
+            this.delegate = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    queue == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queue),
+                    r -> new Thread(r, name + "-" + count.incrementAndGet()),
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.permits = null;
+        }
+
+        // A few threads so one slow client can't hold up every 503; beyond its queue, connections are closed
+        int shedThreads = Math.max(1, Integer.getInteger(prefix + ".shedThreads", 4));
+        this.shedTimeoutMs = Math.max(1, Long.getLong(prefix + ".shedTimeoutMs", 2000));
+        AtomicInteger shedCount = new AtomicInteger();
+        this.shed = new ThreadPoolExecutor(shedThreads, shedThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64),
+                r -> {
+                    Thread t = new Thread(r, name + "-shed-" + shedCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.shedWatchdog = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, name + "-shed-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        shedWatchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    // The server-wide executor configured by handycraft.executor
+    public static synchronized RequestExecutor getInstance() {
+        if (instance == null) {
+            instance = new RequestExecutor("http-worker", "handycraft.executor", 10, 100);
+        }
+        return instance;
+    }
+
+    // Add to every HttpContext served by a RequestExecutor
+    public static Filter overloadFilter() {
+        return OVERLOAD_FILTER;
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        if (permits != null && !permits.tryAcquire()) {
+            reject(exchange);
+            return;
+        }
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    exchange.run();
+                } finally {
+                    active.decrementAndGet();
+                    if (permits != null) permits.release();
+                }
+            });
+            accepted.increment();
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            if (permits != null) permits.release();
+            reject(exchange);
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("mode", mode);
+        metrics.put("capacity", capacity);
+        metrics.put("active", active.get());
+        metrics.put("queued", queued.get());
+        metrics.put("accepted", accepted.sum());
+        metrics.put("rejected", rejected.sum());
+        metrics.put("dropped", dropped.sum());
+        return metrics;
+    }
+
+    private void reject(Runnable exchange) {
+        rejected.increment();
+        try {
+            shed.execute(() -> runShed(exchange));
+        } catch (RejectedExecutionException e) {
+            // HttpServer's dispatcher closes the connection when execute throws
+            dropped.increment();
+            throw e;
+        }
+    }
+
+    // Runs a shed exchange, interrupting it (and so closing its blocking channel) if it overruns
+    private void runShed(Runnable exchange) {
+        Thread thread = Thread.currentThread();
+        ShedTask task = new ShedTask(thread);
+        ScheduledFuture<?> timeout = shedWatchdog.schedule(task::expire, shedTimeoutMs, TimeUnit.MILLISECONDS);
+        SHEDDING.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            SHEDDING.remove();
+            timeout.cancel(false);
+            task.finish();
+            Thread.interrupted(); // don't carry a late interrupt into the next exchange
+        }
+    }
+
+    // The interrupt and the end of the task are ordered by this monitor, so a late interrupt is always cleared
+    private static class ShedTask {
+        private final Thread thread;
+        private boolean running = true;
+
+        ShedTask(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void expire() {
+            if (running) thread.interrupt();
+        }
+
+        synchronized void finish() {
+            running = false;
+        }
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor only exists on JDK 21+, so look it up at runtime
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static class OverloadFilter extends Filter {
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (SHEDDING.get() == null) {
+                chain.doFilter(exchange);
+                return;
+            }
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            ResponseUtil.sendResponse(exchange, 503,
+                    "{\"message\": \"Server is busy. Please try again shortly.\"}", "application/json");
+        }
+
+        @Override
+        public String description() {
+            return "Answers 503 for requests the executor had no room for";
+        }
+    }
+}
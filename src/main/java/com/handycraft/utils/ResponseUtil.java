@@ -1,5 +1,6 @@
 package com.handycraft.utils;
 
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -10,7 +11,11 @@ public class ResponseUtil {
     public static void sendResponse(HttpExchange exchange, int statusCode, String response, String contentType) throws IOException {
 
         // Convert the String response to bytes using UTF-8
-        byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        sendResponse(exchange, statusCode, response.getBytes(StandardCharsets.UTF_8), contentType);
+    }
+
+    // For responses that are already encoded, e.g. cached JSON
+    public static void sendResponse(HttpExchange exchange, int statusCode, byte[] responseBytes, String contentType) throws IOException {
         long responseLength = responseBytes.length;
 
         // Set Content-Type header
@@ -24,4 +29,62 @@ public class ResponseUtil {
             os.write(responseBytes);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sends a pre-serialized body. Sends the gzip copy, under its own ETag, when the client
+     * accepts it, and answers 304 when the client already holds either copy.
+     */
+    public static void sendCached(HttpExchange exchange, CachedResponse response) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        boolean gzip = sendsGzip(exchange, response);
+        headers.set("ETag", gzip ? response.getGzipEtag() : response.getEtag());
+        // Unless the caller chose a policy, let browsers keep the body but revalidate it on every use
+        if (!headers.containsKey("Cache-Control")) {
+            headers.set("Cache-Control", "no-cache");
+        }
+        if (response.getGzipBody() != null) {
+            headers.set("Vary", "Accept-Encoding");
+        }
+
+        if (etagMatches(exchange.getRequestHeaders().getFirst("If-None-Match"), response)) {
+            sendNotModified(exchange);
+            return;
+        }
+
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+            sendResponse(exchange, 200, response.getGzipBody(), response.getContentType());
+        } else {
+            sendResponse(exchange, 200, response.getBody(), response.getContentType());
+        }
+    }
+
+    // Whether sendCached picks the gzip copy for this request
+    public static boolean sendsGzip(HttpExchange exchange, CachedResponse response) {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return response.getGzipBody() != null && acceptEncoding != null
+                && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    public static void sendNotModified(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+    }
+
+    // If-None-Match may hold several tags, weak tags or "*"
+    public static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+
+    // Both copies hold the same content, so either tag means the client is up to date
+    public static boolean etagMatches(String ifNoneMatch, CachedResponse response) {
+        return etagMatches(ifNoneMatch, response.getEtag())
+                || (response.getGzipEtag() != null && etagMatches(ifNoneMatch, response.getGzipEtag()));
+    }
+}
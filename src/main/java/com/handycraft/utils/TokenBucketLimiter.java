@@ -0,0 +1,113 @@
+package com.handycraft.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client token bucket, kept as a single long per client so a check is one CAS.
+ *
+ * The long is the time at which the client's bucket would next be completely full (the
+ * "theoretical arrival time" of GCRA, which behaves exactly like a token bucket). Each request
+ * pushes it forward by one refill interval, and a request is allowed while it stays within
+ * capacity intervals of now. The buckets live in a few ConcurrentHashMaps; the split is only
+ * the unit of cleanup, so each sweep walks one map rather than every client. Idle clients
+ * are dropped that way as traffic goes by, which is safe because an idle bucket is
+ * indistinguishable from a new one.
+ */
+public class TokenBucketLimiter {
+    private static final int STRIPES = 16;
+    private static final int SWEEP_EVERY = 1024;
+
+    private final String name;
+    private final int capacity;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final long idleNanos;
+    private final List<Map<String, AtomicLong>> stripes;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger nextSweep = new AtomicInteger();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+
+    /**
+     * capacity requests may arrive back to back; after that one more is allowed every
+     * 60 / perMinute seconds.
+     */
+    public TokenBucketLimiter(String name, int capacity, int perMinute) {
+        this.name = name;
+        this.capacity = Math.max(1, capacity);
+        this.intervalNanos = 60_000_000_000L / Math.max(1, perMinute);
+        this.burstNanos = this.capacity * intervalNanos;
+        // A bucket full for this long is dropped; a new one starts out the same
+        this.idleNanos = Math.max(burstNanos, 60_000_000_000L);
+        this.stripes = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    // Reads capacity and perMinute from handycraft.ratelimit.<name>.capacity / .perMinute
+    public static TokenBucketLimiter fromProperties(String name, int defaultCapacity, int defaultPerMinute) {
+        return new TokenBucketLimiter(name,
+                Integer.getInteger("handycraft.ratelimit." + name + ".capacity", defaultCapacity),
+                Integer.getInteger("handycraft.ratelimit." + name + ".perMinute", defaultPerMinute));
+    }
+
+    /**
+     * Takes a token for the client. Returns 0 if the request may proceed, otherwise the
+     * number of whole seconds until it would be allowed.
+     */
+    public long tryAcquire(String client) {
+        long now = System.nanoTime();
+        if ((calls.incrementAndGet() & (SWEEP_EVERY - 1)) == 0) {
+            sweep(now);
+        }
+
+        AtomicLong bucket = stripes.get(stripe(client)).computeIfAbsent(client, c -> new AtomicLong(now));
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                limited.increment();
+                long waitNanos = next - now - burstNanos;
+                return Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        int clients = 0;
+        for (Map<String, AtomicLong> stripe : stripes) {
+            clients += stripe.size();
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("capacity", capacity);
+        metrics.put("perMinute", 60_000_000_000L / intervalNanos);
+        metrics.put("trackedClients", clients);
+        metrics.put("allowed", allowed.sum());
+        metrics.put("limited", limited.sum());
+        return metrics;
+    }
+
+    // Drops clients of one map whose bucket has been full for a while
+    private void sweep(long now) {
+        Map<String, AtomicLong> stripe = stripes.get(Math.floorMod(nextSweep.getAndIncrement(), STRIPES));
+        stripe.values().removeIf(bucket -> now - bucket.get() > idleNanos);
+    }
+
+    private static int stripe(String client) {
+        int h = client.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
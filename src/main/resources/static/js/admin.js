@@ -8,6 +8,10 @@ let adminUsersCache = [];
 let adminOrdersCache = [];
 let salesChartInstance = null; //track the chart
 let activityLogs = [];
+let activityLogCursor = null;
+let activityLogSummary = {};
+const LOG_PAGE_SIZE = 100;
+let lowStockThreshold = 5; //replaced by the server's setting once the dashboard loads
 let logoutTimer;
 let warningTimer;
 let countdownInterval;
@@ -114,7 +118,8 @@ async function renderActivityLog() {
     if (!container) return;
     try {
         const headers = checkAdminAccessAndGetHeaders();
-        const response = await fetch(`${API_ADMIN_BASE_URL}/logs`, { headers });
+        //Only the newest page is loaded; counts come from the server-side summary
+        const response = await fetch(`${API_ADMIN_BASE_URL}/logs?limit=${LOG_PAGE_SIZE}&today=${getTodayString()}`, { headers });
 
         if (!response.ok) {
             console.error("Failed to fetch logs from server.");
@@ -123,7 +128,10 @@ async function renderActivityLog() {
         }
 
         //Updates the global activityLogs variable with data from Java
-        activityLogs = await response.json();
+        const page = await response.json();
+        activityLogs = page.items || [];
+        activityLogCursor = page.nextCursor || null;
+        activityLogSummary = page.summary || {};
     } catch (e) {
         console.error("Activity Log Error:", e);
         container.innerHTML = `<p style="color:red; text-align:center; padding:20px;">
@@ -146,7 +154,7 @@ async function renderActivityLog() {
           <div style="display: grid; grid-template-columns: repeat(4, 1fr); gap: 20px; margin-bottom: 30px;">
             <div style="background: #FFF5F6; padding: 20px; border-radius: 8px; border: 1px solid #FADADD; text-align: center;">
                 <div style="color: #D67D8C; font-size: 0.9rem;">Total Activities</div>
-                <div style="font-size: 2rem; font-weight: bold;">${activityLogs.length}</div>
+                <div style="font-size: 2rem; font-weight: bold;">${activityLogSummary.total ?? activityLogs.length}</div>
             </div>
             <div style="background: #FFF5F6; padding: 20px; border-radius: 8px; border: 1px solid #FADADD; text-align: center;">
                 <div style="color: #D67D8C; font-size: 0.9rem;">Today</div>
@@ -174,36 +182,58 @@ async function renderActivityLog() {
                 <tbody>
                     ${activityLogs.length === 0 ?
         '<tr><td colspan="4" style="text-align: center; color: #999;">No activities recorded yet</td></tr>' :
-        activityLogs.map(log => `
+        activityLogs.map(renderActivityLogRow).join('')
+    }
+                </tbody>
+            </table>
+            <div style="text-align: center; margin-top: 15px;">
+                <button id="load-more-logs" onclick="loadMoreActivityLogs()" class="button secondary"
+                        style="display: ${activityLogCursor ? 'inline-block' : 'none'};">Load More</button>
+            </div>
+        </div>
+    `;
+}
+function renderActivityLogRow(log) {
+    return `
                             <tr>
                                 <td style="font-family: monospace; font-size: 0.85rem; color: #666;">${log.timestamp}</td>
                                 <td style="font-weight: 600;">${log.username}</td>
                                 <td><span class="action-badge ${getActionClass(log.action)}">${log.action}</span></td>
                                 <td style="color: #555;">${log.details}</td>
                             </tr>
-                        `).join('')
+                        `;
+}
+//fetch the next (older) page of logs
+async function loadMoreActivityLogs() {
+    if (!activityLogCursor) return;
+    try {
+        const headers = checkAdminAccessAndGetHeaders();
+        const response = await fetch(`${API_ADMIN_BASE_URL}/logs?limit=${LOG_PAGE_SIZE}&cursor=${encodeURIComponent(activityLogCursor)}`, { headers });
+        if (!response.ok) return;
+        const page = await response.json();
+        const items = page.items || [];
+        activityLogs = activityLogs.concat(items);
+        activityLogCursor = page.nextCursor || null;
+
+        document.querySelector('#activity-log-table tbody').insertAdjacentHTML('beforeend', items.map(renderActivityLogRow).join(''));
+        document.getElementById('load-more-logs').style.display = activityLogCursor ? 'inline-block' : 'none';
+        filterActivityLogs();
+    } catch (e) {
+        console.error('Error loading more logs:', e);
     }
-                </tbody>
-            </table>
-        </div>
-    `;
 }
-function getTodayLogsCount() {
+function getTodayString() {
     const now = new Date();
-    const today = `${now.getFullYear()}-${String(now.getMonth() + 1).padStart(2, '0')}-${String(now.getDate()).padStart(2, '0')}`;
-    return activityLogs.filter(log => log.timestamp.startsWith(today)).length;
+    return `${now.getFullYear()}-${String(now.getMonth() + 1).padStart(2, '0')}-${String(now.getDate()).padStart(2, '0')}`;
+}
+function getTodayLogsCount() {
+    return activityLogSummary.today ?? 0;
 }
 function getUniqueAdminCount() {
-    const admins = new Set(activityLogs.map(log => log.username));
-    return admins.size;
+    return activityLogSummary.activeAdmins ?? 0;
 }
 function getLastActivityTime() {
-    if (activityLogs.length === 0) return 'N/A';
-    const sortedLogs = [...activityLogs].sort((a, b) => {
-        return new Date(b.timestamp) - new Date(a.timestamp);
-    });
-    const lastLog = sortedLogs[0];
-    return lastLog.timestamp;
+    return activityLogSummary.lastActivity || 'N/A';
 }
 function getActionClass(action) {
     if (action.includes('Promoted') || action.includes('Added')) return 'action-success';
@@ -242,9 +272,19 @@ async function clearActivityLogs() {
         console.error('Error:', e);
     }
 }
-function exportLogsToCSV() {
+async function exportLogsToCSV() {
+    //Export needs the full history, not just the loaded pages
+    let allLogs = activityLogs;
+    try {
+        const headers = checkAdminAccessAndGetHeaders();
+        const response = await fetch(`${API_ADMIN_BASE_URL}/logs`, { headers });
+        if (response.ok) allLogs = await response.json();
+    } catch (e) {
+        console.error('Error fetching logs for export:', e);
+    }
+
     let csv = "Timestamp,Admin,Action,Details\n";
-    activityLogs.forEach(log => {
+    allLogs.forEach(log => {
         csv += `"${log.timestamp}","${log.username}","${log.action}","${log.details}"\n`;
     });
 
@@ -260,33 +300,21 @@ function exportLogsToCSV() {
 async function fetchDashboardStats() {
     try {
         const headers = checkAdminAccessAndGetHeaders();
-        const response = await fetch(`${API_ADMIN_BASE_URL}/stats`, { headers });
+        //one call: the server keeps these counts up to date
+        const response = await fetch(`${API_ADMIN_BASE_URL}/dashboard`, { headers });
         const stats = await response.json();
-
-        //Manually fetch lists for accuracy
-        let productCount = stats.totalProducts || 0;
-
-        //fetch users specifically for the real count
-        const userRes = await fetch(`${API_ADMIN_BASE_URL}/users`, { headers });
-        const users = await userRes.json();
-        const userCount = users.length;
-
-        //Check the products endpoint if products are 0 in stats
-        if (productCount === 0) {
-            const prodRes = await fetch(`${API_ADMIN_BASE_URL}/products`, { headers });
-            const prods = await prodRes.json();
-            productCount = prods.length;
-        }
+        if (typeof stats.lowStockThreshold === 'number') lowStockThreshold = stats.lowStockThreshold;
 
         //Update UI
-        if (document.getElementById('stat-products')) {
-            document.getElementById('stat-products').textContent = productCount;
-        }
-        if (document.getElementById('stat-orders')) {
-            document.getElementById('stat-orders').textContent = stats.pendingOrders;
-        }
-        if (document.getElementById('stat-users')) {
-            document.getElementById('stat-users').textContent = userCount;
+        const counts = {
+            'stat-products': stats.totalProducts,
+            'stat-orders': stats.pendingOrders,
+            'stat-users': stats.registeredUsers,
+            'stat-low-stock': stats.lowStockProducts
+        };
+        for (const [id, value] of Object.entries(counts)) {
+            const el = document.getElementById(id);
+            if (el) el.textContent = value ?? 0;
         }
     } catch (e) {
         console.error("Dashboard stats error:", e);
@@ -442,16 +470,17 @@ function renderProductTable(products) {
     products.forEach(p => {
         const productId = p['Product ID'] || p.id || 'N/A';
         const currentFileName = p['File Name'] || p.imageUrl || 'placeholder.jpg';
-        const totalInventory = p.Inventory ? (typeof p.Inventory === 'object' ? Object.values(p.Inventory)[0] : p.Inventory) : 0;
+        //summed over variants, as the server counts it for the low stock card
+        const totalInventory = p.Inventory ? (typeof p.Inventory === 'object' ? Object.values(p.Inventory).reduce((sum, q) => sum + (Number(q) || 0), 0) : p.Inventory) : 0;
         const displayId = (typeof productId === 'string' && productId.length > 8) ? `${productId.substring(0, 8)}...` : productId;
 
         html += `<tr>
-            <td><img src="http://localhost:8000/images/products/${currentFileName}" alt="${p['Product Name'] || p.name || 'Product Image'}" style="width: 45px; height: 45px; object-fit: cover; border-radius: 4px;"></td>
+            <td><img src="http://localhost:8000/images/products/${currentFileName}?w=160" alt="${p['Product Name'] || p.name || 'Product Image'}" style="width: 45px; height: 45px; object-fit: cover; border-radius: 4px;"></td>
             <td style="color: #666; font-size: 0.85rem; font-family: monospace;">${displayId}</td>
             <td style="font-weight: 600;">${p['Product Name'] || p.name}</td>
             <td>${p.Category || p.category || 'N/A'}</td>
             <td>${parseFloat(p['Price (RM)'] || p.price || 0).toFixed(2)}</td>
-            <td class="${totalInventory < 5 ? 'low-stock' : ''}">${totalInventory}</td>
+            <td class="${totalInventory < lowStockThreshold ? 'low-stock' : ''}">${totalInventory}</td>
             <td>
                 <div style="display: flex; gap: 8px;">
                     <button class="button small secondary" onclick="showProductModal('${productId}')">Edit</button>
@@ -818,26 +847,14 @@ async function renderSalesReport() {
         o.status === 'Shipped' || o.status === 'Completed'
     );
 
-    //calculate Summary Metrics using the new soldOrders
-    const totalRevenue = soldOrders.reduce((sum, o) => sum + o.totalAmount, 0);
-    const totalOrders = soldOrders.length;
+    //summary metrics and best sellers come from the server's daily rollups
+    const report = await fetchSalesReport('day');
+    const totalRevenue = report ? report.totals.revenue : 0;
+    const totalOrders = report ? report.totals.orders : 0;
 
-    //calculate Top Selling Products
-    const productStats = {};
-    soldOrders.forEach(order => {
-        order.items.forEach(item => {
-            if (!productStats[item.name]) {
-                productStats[item.name] = { count: 0, revenue: 0 };
-            }
-            productStats[item.name].count += item.quantity;
-            productStats[item.name].revenue += (item.price * item.quantity);
-        });
-    });
-
-    const topProducts = Object.entries(productStats)
-        .map(([name, data]) => ({ name, ...data }))
-        .sort((a, b) => b.revenue - a.revenue)
-        .slice(0, 5);
+    const topProducts = (report ? report.products : [])
+        .slice(0, 5)
+        .map(p => ({ name: p.name, count: p.units, revenue: p.revenue }));
 
     //build the UI
     container.innerHTML = `
@@ -924,99 +941,47 @@ async function renderSalesReport() {
     //initialize the chart with soldOrders to track units sold
     changePeriod();
 }
-//daily
-function groupByDay(orders) {
-    const grouped = {};
-    orders.forEach(order => {
-        const date = order.orderDate.split(' ')[0];
-        if (!grouped[date]) {
-            grouped[date] = { orders: 0, revenue: 0, products: {} };
-        }
-        grouped[date].orders += 1;
-        grouped[date].revenue += order.totalAmount;
-
-        order.items.forEach(item => {
-            if (!grouped[date].products[item.name]) {
-                grouped[date].products[item.name] = 0;
-            }
-            grouped[date].products[item.name] += item.quantity;
-        });
-    });
-    return grouped;
+//sales rollups by day, week or month, kept up to date on the server
+async function fetchSalesReport(granularity) {
+    try {
+        const headers = checkAdminAccessAndGetHeaders();
+        const response = await fetch(`${API_ADMIN_BASE_URL}/sales?granularity=${granularity}`, { headers });
+        if (!response.ok) throw new Error(`HTTP ${response.status}`);
+        return await response.json();
+    } catch (e) {
+        console.error("Sales report error:", e);
+        return null;
+    }
 }
-//weekly
-function groupByWeek(orders) {
-    const grouped = {};
-    orders.forEach(order => {
-        const date = new Date(order.orderDate);
-        const year = date.getFullYear();
-        const weekNum = getWeekNumber(date);
-        const weekLabel = `${year}-W${weekNum}`;
 
-        if (!grouped[weekLabel]) {
-            grouped[weekLabel] = { orders: 0, revenue: 0, products: {} };
-        }
-        grouped[weekLabel].orders += 1;
-        grouped[weekLabel].revenue += order.totalAmount;
-
-        order.items.forEach(item => {
-            if (!grouped[weekLabel].products[item.name]) {
-                grouped[weekLabel].products[item.name] = 0;
-            }
-            grouped[weekLabel].products[item.name] += item.quantity;
-        });
-    });
-    return grouped;
-}
-//monthly
-function groupByMonth(orders) {
+//period label -> { orders, revenue, products: { name: units } } for the chart and table
+function toSalesData(report) {
     const grouped = {};
-    orders.forEach(order => {
-        const month = order.orderDate.substring(0, 7); // "2025-12"
-        if (!grouped[month]) {
-            grouped[month] = { orders: 0, revenue: 0, products: {} };
-        }
-        grouped[month].orders += 1;
-        grouped[month].revenue += order.totalAmount;
-
-        order.items.forEach(item => {
-            if (!grouped[month].products[item.name]) {
-                grouped[month].products[item.name] = 0;
-            }
-            grouped[month].products[item.name] += item.quantity;
-        });
+    (report ? report.periods : []).forEach(p => {
+        const products = {};
+        p.products.forEach(item => { products[item.name] = item.units; });
+        grouped[p.period] = { orders: p.orders, revenue: p.revenue, products };
     });
     return grouped;
 }
-function getWeekNumber(date) {
-    const firstDayOfYear = new Date(date.getFullYear(), 0, 1);
-    const pastDaysOfYear = (date - firstDayOfYear) / 86400000;
-    return Math.ceil((pastDaysOfYear + firstDayOfYear.getDay() + 1) / 7);
-}
 
-function changePeriod() {
+async function changePeriod() {
     const period = document.getElementById('time-period').value;
-    const soldOrders = adminOrdersCache.filter(o =>
-        o.status === 'Shipped' || o.status === 'Completed'
-    );
 
-    let salesData;
     let chartTitle;
     let tableTitle;
 
     if (period === 'daily') {
-        salesData = groupByDay(soldOrders);
         chartTitle = 'Daily Sales Trend';
         tableTitle = 'Sales by Day';
     } else if (period === 'weekly') {
-        salesData = groupByWeek(soldOrders);
         chartTitle = 'Weekly Sales Trend';
         tableTitle = 'Sales by Week';
     } else if (period === 'monthly') {
-        salesData = groupByMonth(soldOrders);
         chartTitle = 'Monthly Sales Trend';
         tableTitle = 'Sales by Month';
     }
+    const salesData = toSalesData(await fetchSalesReport(period));
 
     document.getElementById('chart-title').textContent = chartTitle;
     updateSalesChart(salesData);
@@ -13,8 +13,8 @@ document.addEventListener('DOMContentLoaded', () => {
 
     // Run all initialization together
     async function initializeProductPage(productId) {
+        // The product response already carries the rating summary
         await fetchProductDetails(productId);
-        await updateAverageDisplay(productId);
         await loadFeedback(productId);
         await checkReviewEligibility(productId);
     }
@@ -62,12 +62,13 @@ function checkLoginStatus() {
 async function fetchProductDetails(id) {
     try {
         //const res = await fetch('http://localhost:8000/api/products');
-        const res = await fetch('/api/products');
-        const products = await res.json();
-        const product = products.find(p => p['Product ID'].toString() === id);
+        const res = await fetch(`/api/products/${encodeURIComponent(id)}`);
 
-        if (product) {
-            renderProductDetail(product);
+        if (res.ok) {
+            const data = await res.json();
+            renderProductDetail(data.product);
+            const avgDisplay = document.getElementById('avg-rating-value');
+            if (avgDisplay) avgDisplay.textContent = ((data.rating && data.rating.average) || 0).toFixed(1);
         } else {
             document.getElementById('product-detail-container').innerHTML = "<p>Product ID not found.</p>";
         }
@@ -78,7 +79,7 @@ async function fetchProductDetails(id) {
 
 function renderProductDetail(product) {
     const container = document.getElementById('product-detail-container');
-    const imageUrl = product['File Name'] ? `images/products/${product['File Name']}` : 'images/placeholder.jpg';
+    const imageUrl = product['File Name'] ? `images/products/${product['File Name']}?w=640` : 'images/placeholder.jpg';
     const inventoryObj = product.Inventory || {};
     const variants = Object.keys(inventoryObj);
 
@@ -20,53 +20,89 @@ function checkLoginStatus() {
 }
 
 // API Fetching, Filtering, and Rendering
+const PRODUCTS_PAGE_SIZE = 24;
+let nextProductsCursor = null;
+
+function mapProduct(p) {
+    return {
+        id: p['Product ID'],
+        category: p.Category,
+        name: p['Product Name'],
+        price: p['Price (RM)'],
+        description: p.Description,
+        imageUrl: p['File Name'],
+        inventory: p.Inventory
+    };
+}
+
 function fetchProducts() {
-    fetch(API_PRODUCTS_URL)
+    // Other pages load this script only for the cart helpers
+    if (!document.getElementById('product-grid')) return;
+
+    const params = new URLSearchParams(window.location.search);
+    const searchQuery = params.get('search');
+    const categoryFilter = params.get('category');
+
+    if (searchQuery && !(categoryFilter && categoryFilter !== 'all')) {
+        fetchSearchResults(searchQuery);
+    } else {
+        fetchProductPage(categoryFilter, params.get('sort'), null);
+    }
+}
+
+// Filtering, sorting and paging happen on the server; each call renders one page
+function fetchProductPage(categoryFilter, sort, cursor) {
+    const query = new URLSearchParams({ limit: PRODUCTS_PAGE_SIZE });
+    if (categoryFilter && categoryFilter !== 'all') query.set('category', categoryFilter);
+    if (sort) query.set('sort', sort);
+    if (cursor) query.set('cursor', cursor);
+
+    fetch(`${API_PRODUCTS_URL}?${query}`)
         .then(response => response.json())
-        .then(products => {
-            if (Array.isArray(products) && products.length > 0) {
-                // Map and save data globally
-                allProductsData = products.map(p => ({
-                    id: p['Product ID'],
-                    category: p.Category,
-                    name: p['Product Name'],
-                    price: p['Price (RM)'],
-                    description: p.Description,
-                    imageUrl: p['File Name'],
-                    inventory: p.Inventory
-                }));
-
-                const params = new URLSearchParams(window.location.search);
-                const categoryFilter = params.get('category');
-                const searchQuery = params.get('search');
-
-                let filteredProducts = allProductsData;
-                let pageTitle = 'All Handmade Crochet Collections';
+        .then(page => {
+            const items = (page.items || []).map(mapProduct);
+            allProductsData = cursor ? allProductsData.concat(items) : items;
+            nextProductsCursor = page.nextCursor || null;
 
+            if (!cursor) {
+                const categories = (page.facets && page.facets.categories) || [];
+                let pageTitle = 'All Handmade Crochet Collections';
                 if (categoryFilter && categoryFilter !== 'all') {
-                    const normalizedFilter = categoryFilter.toLowerCase().replace(/\s/g, '');
-                    filteredProducts = allProductsData.filter(product =>
-                        product.category &&
-                        product.category.toLowerCase().replace(/\s/g, '').includes(normalizedFilter)
-                    );
-                    pageTitle = (filteredProducts.length > 0 ? filteredProducts[0].category : categoryFilter) + " Collection";
-                } else if (searchQuery) {
-                    const lowerQuery = searchQuery.toLowerCase();
-                    filteredProducts = allProductsData.filter(product =>
-                        (product.name && product.name.toLowerCase().includes(lowerQuery)) ||
-                        (product.description && product.description.toLowerCase().includes(lowerQuery))
-                    );
-                    pageTitle = `Search Results for: "${searchQuery}"`;
+                    const match = categories.find(c => c.slug === categoryFilter.toLowerCase());
+                    pageTitle = (match ? match.name : categoryFilter) + " Collection";
                 }
-
                 updatePageTitle(pageTitle);
-                populateCategoryFilter(allProductsData, categoryFilter);
+                populateCategoryFilter(categories, categoryFilter);
+            }
 
-                if (filteredProducts.length > 0) {
-                    renderProducts(filteredProducts);
-                } else {
-                    document.getElementById('product-grid').innerHTML = '<p>No products found in this selection.</p>';
-                }
+            if (allProductsData.length > 0) {
+                renderProducts(items, Boolean(cursor));
+            } else {
+                document.getElementById('product-grid').innerHTML = '<p>No products found in this selection.</p>';
+            }
+            updateLoadMoreButton(() => fetchProductPage(categoryFilter, sort, nextProductsCursor));
+        })
+        .catch(error => {
+            console.error("Error loading products:", error);
+            document.getElementById('product-grid').innerHTML = `<p class="error-message">Could not connect to the server.</p>`;
+        });
+}
+
+function fetchSearchResults(searchQuery) {
+    Promise.all([
+        fetch(`${API_PRODUCTS_URL}/search?q=${encodeURIComponent(searchQuery)}&limit=100`).then(response => response.json()),
+        fetch(`${API_PRODUCTS_URL}?limit=1`).then(response => response.json())
+    ])
+        .then(([results, page]) => {
+            allProductsData = (results.items || []).map(mapProduct);
+
+            updatePageTitle(`Search Results for: "${searchQuery}"`);
+            populateCategoryFilter((page.facets && page.facets.categories) || [], null);
+
+            if (allProductsData.length > 0) {
+                renderProducts(allProductsData);
+            } else {
+                document.getElementById('product-grid').innerHTML = '<p>No products found in this selection.</p>';
             }
         })
         .catch(error => {
@@ -75,39 +111,56 @@ function fetchProducts() {
         });
 }
 
+function updateLoadMoreButton(loadMore) {
+    const grid = document.getElementById('product-grid');
+    let button = document.getElementById('load-more-products');
+    if (!nextProductsCursor) {
+        if (button) button.remove();
+        return;
+    }
+    if (!button) {
+        button = document.createElement('button');
+        button.id = 'load-more-products';
+        button.className = 'button secondary';
+        button.textContent = 'Load More';
+        button.style.cssText = 'display: block; margin: 20px auto;';
+        grid.insertAdjacentElement('afterend', button);
+    }
+    button.onclick = loadMore;
+}
+
 function updatePageTitle(title) {
     const pageTitleElement = document.querySelector('.page-title');
     if (pageTitleElement) pageTitleElement.textContent = title;
 }
 
-function populateCategoryFilter(products, currentFilter) {
+function populateCategoryFilter(categories, currentFilter) {
     const filterDropdown = document.getElementById('category-filter');
     if (!filterDropdown) return;
-    const categories = [...new Set(products.map(p => p.category))].sort();
     filterDropdown.innerHTML = '<option value="all">All Products</option>';
     categories.forEach(category => {
-        if (category) {
-            const option = document.createElement('option');
-            const slug = category.toLowerCase().replace(/\s/g, '');
-            option.value = slug;
-            option.textContent = category;
-            if (currentFilter && slug === currentFilter.toLowerCase()) option.selected = true;
-            filterDropdown.appendChild(option);
-        }
+        const option = document.createElement('option');
+        option.value = category.slug;
+        option.textContent = category.name;
+        if (currentFilter && category.slug === currentFilter.toLowerCase()) option.selected = true;
+        filterDropdown.appendChild(option);
     });
     filterDropdown.addEventListener('change', (e) => {
         window.location.href = `products.html?category=${e.target.value}`;
     });
 }
 
-function renderProducts(products) {
+function renderProducts(products, append = false) {
     const gridContainer = document.getElementById('product-grid');
-    gridContainer.innerHTML = '';
+    if (!append) gridContainer.innerHTML = '';
 
     products.forEach(product => {
         const safePrice = product.price || 0;
         const formattedPrice = parseFloat(safePrice).toFixed(2);
-        const finalImage = product.imageUrl ? `images/products/${product.imageUrl}` : "images/placeholder.jpg";
+        // Cards show resized copies; the browser picks the width that fits the card and screen density
+        const baseImage = product.imageUrl ? `images/products/${product.imageUrl}` : null;
+        const finalImage = baseImage ? `${baseImage}?w=320` : "images/placeholder.jpg";
+        const imageSrcset = baseImage ? `srcset="${baseImage}?w=160 160w, ${baseImage}?w=320 320w, ${baseImage}?w=640 640w" sizes="(max-width: 600px) 50vw, 300px"` : '';
 
         // Calculate Total Stock Across All Variants
         const inventory = product.inventory || {};
@@ -140,7 +193,7 @@ function renderProducts(products) {
         <div class="image-container-relative">
             <a href="product-detail.html?id=${product.id}" class="product-link">
                 <div class="product-image-wrapper">
-                    <img src="${finalImage}" alt="${product.name}" class="product-image" style="display: block; width: 100%;"/>
+                    <img src="${finalImage}" ${imageSrcset} loading="lazy" alt="${product.name}" class="product-image" style="display: block; width: 100%;"/>
                 </div>
             </a>
             ${isSoldOut ? `<div class="sold-out-badge">Sold Out</div>` : ''}